@@ -1,6 +1,22 @@
 package amazons;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static amazons.Piece.*;
 
@@ -26,170 +42,1947 @@ class AI extends Player {
      * a template).
      */
     AI() {
-        this(null, null);
+        this(new SearchOptions());
     }
 
     /**
-     * A new AI playing PIECE under control of CONTROLLER.
+     * A new AI template whose players search according to OPTIONS.
      */
-    AI(Piece piece, Controller controller) {
+    AI(SearchOptions options) {
+        this(null, null, options);
+    }
+
+    /**
+     * A new AI playing PIECE under control of CONTROLLER, searching
+     * according to OPTIONS.
+     */
+    AI(Piece piece, Controller controller, SearchOptions options) {
+        this(piece, controller, options, piece == null ? null
+             : new TranspositionTable(options.tableSize()));
+    }
+
+    /**
+     * A new AI playing PIECE under control of CONTROLLER, searching
+     * according to OPTIONS, and keeping its results in TABLE, which
+     * other AIs may share.
+     */
+    AI(Piece piece, Controller controller, SearchOptions options,
+       TranspositionTable table) {
         super(piece, controller);
+        _options = options;
+        _table = table;
     }
 
     @Override
     Player create(Piece piece, Controller controller) {
-        return new AI(piece, controller);
+        return new AI(piece, controller, _options);
+    }
+
+    @Override
+    SearchOptions options() {
+        return _options;
     }
 
     @Override
     String myMove() {
-        Move move = findMove();
+        Move move = findMove(board());
+        _controller.reportStats(_myPiece, _stats);
         _controller.reportMove(move);
+        if (_options.ponder()) {
+            startPondering(board(), move);
+        }
         return move.toString();
     }
 
     /**
-     * Return a move for me from the current position, assuming there
-     * is a move.
+     * Return a move for me from POSITION, assuming there is a move.
+     * Searches to successively greater depths until the time budget or
+     * depth limit in my options is reached, and returns the move chosen
+     * by the deepest search that finished.  With more than one thread
+     * in my options, helper threads search the same position on their
+     * own copies at staggered depths, sharing my transposition table
+     * (a "lazy SMP" search); the deepest completed result of any thread
+     * is used.  POSITION is not modified.
+     *
+     * If my options' strategy is "ybwc", the threads instead share the
+     * work of one search by young-brothers-wait (see YoungBrothers) on
+     * a ForkJoinPool shared by all AIs with the same thread count.
+     *
+     * Each iteration is a principal variation search: only the first
+     * move at each position is searched with the full window, and the
+     * rest with null windows that merely prove them no better, being
+     * searched again only if that fails.  After the first iteration,
+     * the root window is an aspiration window around the previous
+     * iteration's value, widened on failure.
+     *
+     * If my options call for a split-ply search (and the strategy is
+     * "smp"), each move is searched as two half-plies, the queen move
+     * and then the spear (see Searcher.findSplit), so that a queen move
+     * can be refuted before most of its spears are generated.
+     *
+     * If my options set spear limits, positions other than the root
+     * try each queen move with only its most promising few spears (see
+     * SearchOptions.arrowLimits), so that the search goes deeper in the
+     * same time, at the risk of missing a good spear.
+     *
+     * Once no region of the board holds queens of both colors, the
+     * remaining play is a race to fill regions, and I play the first
+     * move of an exact solution of one of my regions instead of
+     * searching, if a RegionSolver can find one.  Before then, the
+     * search ignores queens in regions that hold only one color (other
+     * than when they have the only moves).
+     *
+     * If my options have an opening book with a move for POSITION, I
+     * play it without searching at all.  If I have been pondering
+     * POSITION, the ponder search becomes this search, with the time
+     * budget counted from now; if I have been pondering some other
+     * position, that search is abandoned.
+     *
+     * Afterwards, searchStats() describes what I did,
+     * principalVariation() gives the line of play I expect, and a
+     * SearchEvent records both for the JDK Flight Recorder.
+     */
+    @Override
+    Move findMove(Board position) {
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        Move move = chooseMove(position);
+        event.finish(_myPiece, move, _source, _stats, line(_pv));
+        _statistics = String.format("%s: %s, %s, %d TT probes, "
+                                    + "%.1f%% hits, pv %s",
+                                    _myPiece.toName(), _source, _stats,
+                                    _table.probes(),
+                                    100.0 * _table.hitRate(), line(_pv));
+        return move;
+    }
+
+    /**
+     * Return my move from POSITION, as for findMove, setting _source to
+     * how it was found and _stats to a description of the work done.
+     */
+    private Move chooseMove(Board position) {
+        boolean prepared = _prepared;
+        _prepared = false;
+        if (_ponder != null) {
+            Move pondered = finishPondering(position);
+            if (pondered != null) {
+                _source = "ponder";
+                return pondered;
+            }
+        }
+        _table.resetStatistics();
+        _start = System.nanoTime();
+        _depthReached = 0;
+        _nodes = 0;
+        _score = 0;
+        _stats = new SearchStats();
+        OpeningBook book = _options.book();
+        if (book != null) {
+            int move = book.probe(position);
+            if (move != Move.NONE) {
+                _source = "book";
+                _pv = new int[] { move };
+                _stats.finish(System.nanoTime() - _start);
+                return Move.mv(move);
+            }
+        }
+        if (sealRegions(position)) {
+            int move = solveRegions(position);
+            if (move != Move.NONE) {
+                _source = "solver";
+                _pv = new int[] { move };
+                _stats.visited(_nodes);
+                _stats.finish(System.nanoTime() - _start);
+                return Move.mv(move);
+            }
+        }
+        long budget = _options.moveTime() * 1_000_000L;
+        _deadline = budget > 0 ? _start + budget : Long.MAX_VALUE;
+        _stopped = false;
+        if (prepared && _stopRequested) {
+            _stopped = true;
+        }
+        _source = "search";
+        return Move.mv(search(position));
+    }
+
+    /**
+     * Search POSITION as described for findMove, until _deadline or
+     * until _stopped, and return the code of the move found.  The
+     * caller sets _start, _deadline, and the sealed regions.
+     */
+    private int search(Board position) {
+        if (_options.strategy().equals("ybwc")) {
+            return splitSearch(position);
+        }
+        int threads = _options.threads();
+        Board.Position root = position.snapshot();
+        Searcher main = new Searcher(root, 0);
+        List<Searcher> searchers = new ArrayList<>();
+        searchers.add(main);
+        List<Future<?>> running = new ArrayList<>();
+        for (int id = 1; id < threads; id += 1) {
+            Searcher helper = new Searcher(root, id);
+            searchers.add(helper);
+            running.add(helpers(threads - 1).submit(helper::search));
+        }
+        main.search();
+        _stopped = true;
+        for (Future<?> f : running) {
+            await(f);
+        }
+        Searcher best = main;
+        SearchStats stats = new SearchStats();
+        for (Searcher s : searchers) {
+            stats.add(s._stats);
+            if (s._depthReached > best._depthReached) {
+                best = s;
+            }
+        }
+        stats.finish(System.nanoTime() - _start);
+        _stats = stats;
+        _nodes = stats.nodes();
+        _depthReached = best._depthReached;
+        _score = best._score;
+        _pv = best._line;
+        return best._best;
+    }
+
+    /**
+     * Search POSITION as for search, by young-brothers-wait on the
+     * shared pool for my thread count.
+     */
+    private int splitSearch(Board position) {
+        YoungBrothers search = new YoungBrothers(position.snapshot());
+        int move = pool(_options.threads())
+            .invoke(ForkJoinTask.adapt(search::search));
+        SearchStats stats = search.stats();
+        stats.finish(System.nanoTime() - _start);
+        _stats = stats;
+        _nodes = stats.nodes();
+        _depthReached = search._depthReached;
+        _score = search._score;
+        _pv = tableLine(position, move, _depthReached);
+        return move;
+    }
+
+    /**
+     * Return the line of play from POSITION that starts with the move
+     * MOVE and continues with the moves stored in my transposition
+     * table, up to LIMIT moves in all.  POSITION is not modified.
+     */
+    private int[] tableLine(Board position, int move, int limit) {
+        int[] line = new int[Math.max(limit, 1)];
+        Board board = new Board(position);
+        int n = 0;
+        int next = move;
+        while (n < line.length && next != Move.NONE
+               && board.get(Square.sq(Move.from(next))) == board.turn()
+               && board.isLegal(next)) {
+            line[n] = next;
+            n += 1;
+            board.makeMove(next);
+            long entry = _table.find(board.key());
+            next = entry == 0 ? Move.NONE : TranspositionTable.move(entry);
+        }
+        return Arrays.copyOf(line, n);
+    }
+
+    /**
+     * Start searching, in the background and without a time limit, the
+     * position that I expect after my move MINE from POSITION and my
+     * opponent's reply.  The reply expected is the one stored for it in
+     * my transposition table, if any; otherwise I do not ponder.
      */
-    private Move findMove() {
-        Board b = new Board(board());
-        Piece[] save = new Piece[Board.SIZE * Board.SIZE];
-        int i = 0;
-        for (Square s : Square.SQUARES) {
-            save[i] = s.getPiece();
-            i += 1;
+    private void startPondering(Board position, Move mine) {
+        Board guess = new Board(position);
+        guess.makeMove(mine);
+        if (guess.winner() != EMPTY) {
+            return;
         }
-        if (_myPiece == WHITE) {
-            findMove(b, maxDepth(b), true, 1, -INFTY, INFTY);
+        long entry = _table.find(guess.key());
+        int reply = entry == 0 ? Move.NONE : TranspositionTable.move(entry);
+        if (reply == Move.NONE
+            || guess.get(Square.sq(Move.from(reply))) != guess.turn()
+            || !guess.isLegal(reply)) {
+            return;
+        }
+        guess.makeMove(reply);
+        if (guess.winner() != EMPTY || sealRegions(guess)) {
+            return;
+        }
+        _table.resetStatistics();
+        _ponderKey = guess.key();
+        _start = System.nanoTime();
+        _deadline = Long.MAX_VALUE;
+        _stopped = false;
+        _ponder = ponderThread().submit(() -> search(guess));
+    }
+
+    /**
+     * End pondering, given that my opponent's move has produced
+     * POSITION.  If that is the position I was pondering, let the
+     * search run out my usual time budget (counted from now), and
+     * return its move.  Otherwise, stop the search and return null.
+     */
+    private Move finishPondering(Board position) {
+        Future<Integer> ponder = _ponder;
+        _ponder = null;
+        boolean hit = position.key() == _ponderKey;
+        if (hit) {
+            long budget = _options.moveTime() * 1_000_000L;
+            _start = System.nanoTime();
+            _deadline = budget > 0 ? _start + budget : Long.MAX_VALUE;
         } else {
-            findMove(b, maxDepth(b), true, -1, -INFTY, INFTY);
+            _stopped = true;
+        }
+        int move = await(ponder);
+        return hit ? Move.mv(move) : null;
+    }
+
+    /**
+     * Wait for TASK to finish and return its result.
+     */
+    private static <T> T await(Future<T> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /**
+     * Set _sealedLo and _sealedHi to the squares of the regions of
+     * POSITION that do not hold queens of both colors, and return true
+     * iff every region is such.
+     */
+    private boolean sealRegions(Board position) {
+        _sealedLo = _sealedHi = 0;
+        boolean contested = false;
+        for (Region region : position.regions()) {
+            if (region.contested()) {
+                contested = true;
+            } else {
+                _sealedLo |= region.lo();
+                _sealedHi |= region.hi();
+            }
+        }
+        return !contested;
+    }
+
+    /**
+     * Return the first move of an exact solution of one of my regions
+     * in POSITION, which has no contested regions, or Move.NONE if none
+     * can be found.  Sets _depthReached to the number of moves in the
+     * solution, and _nodes to the number of positions examined.
+     */
+    private int solveRegions(Board position) {
+        Piece side = position.turn();
+        _nodes = 0;
+        for (Region region : position.regions()) {
+            if (region.owner() != side) {
+                continue;
+            }
+            RegionSolver solver = new RegionSolver(position, region);
+            int count = solver.solve();
+            _nodes += solver.positions();
+            if (count > 0) {
+                _depthReached = count;
+                return solver.bestMove();
+            }
+        }
+        return Move.NONE;
+    }
+
+    @Override
+    void prepareSearch() {
+        _stopRequested = false;
+        _prepared = true;
+    }
+
+    /**
+     * Stop the search in progress once it has completed an iteration.
+     * If I am pondering, abandon that search and wait for it to end, so
+     * that whatever happens to the board next (an undo, a new game)
+     * cannot be confused with the position I was pondering.
+     */
+    @Override
+    void stop() {
+        _stopRequested = true;
+        _stopped = true;
+        Future<Integer> ponder = _ponder;
+        if (ponder != null) {
+            _ponder = null;
+            await(ponder);
+        }
+    }
+
+    /**
+     * Stop any pondering, and clear my transposition table and move
+     * orderings, so that the next game does not start with what the
+     * last one taught me.
+     */
+    @Override
+    void newGame() {
+        stop();
+        _table.clear();
+        _orderings.clear();
+    }
+
+    /**
+     * Return the summary of my last search made when it finished, so
+     * that it is safe to read from another thread, and is not disturbed
+     * by my pondering.  Returns null before my first search.
+     */
+    @Override
+    String statistics() {
+        return _statistics;
+    }
+
+    /**
+     * Return a description of my last search.
+     */
+    SearchStats searchStats() {
+        return _stats;
+    }
+
+    /**
+     * Return the depth of the deepest completed iteration of the last
+     * search.
+     */
+    int depthReached() {
+        return _depthReached;
+    }
+
+    /**
+     * Return the value (positive if good for White) found by the deepest
+     * completed iteration of the last search, or 0 if it did not
+     * search.
+     */
+    int score() {
+        return _score;
+    }
+
+    @Override
+    long nodes() {
+        return _nodes;
+    }
+
+    /**
+     * Return the codes of the moves that the last search expects to be
+     * played from its position, starting with the move it chose: the
+     * principal variation of its deepest completed iteration.  It may
+     * end early where the search took a value from the transposition
+     * table.
+     */
+    int[] principalVariation() {
+        return _pv.clone();
+    }
+
+    /**
+     * Return the printed form of the moves with codes MOVES, separated
+     * by blanks.
+     */
+    static String line(int[] moves) {
+        StringBuilder result = new StringBuilder();
+        for (int move : moves) {
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append(Move.toString(move));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Return the fork-join pool with parallelism N shared by all AIs,
+     * creating it if necessary.
+     */
+    private static synchronized ForkJoinPool pool(int n) {
+        return POOLS.computeIfAbsent(n, ForkJoinPool::new);
+    }
+
+    /**
+     * Return a pool of N helper threads, creating it if necessary.
+     */
+    private ExecutorService helpers(int n) {
+        if (_helpers == null || _helperCount != n) {
+            if (_helpers != null) {
+                _helpers.shutdown();
+            }
+            _helpers = daemons(n);
+            _helperCount = n;
         }
-        i = 0;
-        for (Square s : Square.SQUARES) {
-            s.setPiece(save[i]);
-            i += 1;
+        return _helpers;
+    }
+
+    /**
+     * Return the thread on which I ponder, creating it if necessary.
+     */
+    private ExecutorService ponderThread() {
+        if (_ponderer == null) {
+            _ponderer = daemons(1);
         }
-        return _lastFoundMove;
+        return _ponderer;
     }
 
     /**
-     * The move found by the last call to one of the ...FindMove methods
-     * below.
+     * Return a new pool of N daemon search threads.  The threads exit
+     * when idle, so that finished players do not hold on to them.
      */
-    private Move _lastFoundMove;
+    private static ExecutorService daemons(int n) {
+        ThreadPoolExecutor pool =
+            new ThreadPoolExecutor(n, n, 1, TimeUnit.SECONDS,
+                                   new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "amazons-search");
+                t.setDaemon(true);
+                return t;
+            });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
     /**
-     * Find a move from position BOARD and return its value, recording
-     * the move found in _lastFoundMove iff SAVEMOVE. The move
-     * should have maximal value or have value > BETA if SENSE==1,
-     * and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     * DEPTH levels.  Searching at level 0 simply returns a static estimate
-     * of the board value and does not set _lastMoveFound.
+     * One thread's share of a search, on its own copy of the position.
      */
-    private int findMove(Board board, int depth, boolean saveMove, int sense,
-                         int alpha, int beta) {
-        if (depth == 0 || board.winner() != EMPTY) {
-            return staticScore(board);
+    private class Searcher {
+
+        /**
+         * A searcher for POSITION with thread number ID (0 for the
+         * thread that controls the search).
+         */
+        Searcher(Board.Position position, int id) {
+            _board = new Board(position);
+            _id = id;
+            _moves = moveLists(id);
+            _ordering = ordering(id);
+            _ordered = _options.ordering();
+            _eval = Evaluator.create(_options);
+            _maxNodes = _options.maxNodes();
+            _arrowLimits = _options.arrowLimits();
+            _split = _options.splitPly();
+            if (_split) {
+                _queenMoves = new int[SearchOptions.MAX_DEPTH + 1][];
+                _spears = new int[SearchOptions.MAX_DEPTH + 1][];
+                _spearRanks = new long[SearchOptions.MAX_DEPTH + 1][];
+                _spearPv = new int[SearchOptions.MAX_DEPTH + 1]
+                    [SearchOptions.MAX_DEPTH];
+                _spearPvLength = new int[SearchOptions.MAX_DEPTH + 1];
+            }
         }
-        Piece my = WHITE;
-        int bestH = alpha;
-        if (sense == -1) {
-            my = BLACK;
-            bestH = beta;
+
+        /**
+         * Search by iterative deepening until the time or depth limit
+         * is reached or (for helpers) the controlling thread finishes.
+         * Odd-numbered helpers start one ply deeper than the others, so
+         * that at any moment the threads are spread over two depths and
+         * the shallower ones find the deeper ones' results in the
+         * table.
+         */
+        void search() {
+            int sense = _board.turn() == WHITE ? 1 : -1;
+            _ordering.newSearch();
+            for (int depth = 1 + (_id & 1); depth <= _options.maxDepth();
+                 depth += 1) {
+                _rootDepth = depth;
+                IterationEvent event = new IterationEvent();
+                event.begin();
+                long nodes = _nodes;
+                int alpha = -INFTY, beta = INFTY;
+                if (_depthReached > 0 && Math.abs(_score) < WINNING_VALUE) {
+                    alpha = _score - _eval.aspirationWindow();
+                    beta = _score + _eval.aspirationWindow();
+                }
+                int value;
+                while (true) {
+                    value = _split
+                        ? findSplit(_board, depth, true, sense, alpha, beta)
+                        : findMove(_board, depth, true, sense, alpha, beta);
+                    if (_stopped || value > alpha && value < beta) {
+                        break;
+                    }
+                    if (value <= alpha) {
+                        alpha = -INFTY;
+                    }
+                    if (value >= beta) {
+                        beta = INFTY;
+                    }
+                    _stats.researched();
+                }
+                if (_stopped && (_id != 0 || _depthReached > 0)) {
+                    break;
+                }
+                _best = _lastFoundMove;
+                _line = _pvLength[0] > 0 && _pv[0][0] == _best
+                    ? Arrays.copyOf(_pv[0], _pvLength[0])
+                    : new int[] { _best };
+                _score = value;
+                _depthReached = depth;
+                _stats.iteration(depth, _nodes - nodes);
+                event.finish(_id, depth, _nodes - nodes, value);
+                if (Math.abs(value) == WINNING_VALUE) {
+                    break;
+                }
+                if (_id == 0 && _deadline != Long.MAX_VALUE
+                    && System.nanoTime() - _start > (_deadline - _start) / 2) {
+                    break;
+                }
+            }
+            _stats.visited(_nodes);
         }
-        Iterator<Move> fm = board.legalMoves(my);
-        if (!fm.hasNext()) {
-            return staticScore(board);
+
+        /**
+         * Return true iff the search in progress should stop.  The
+         * clock (and the controlling thread's node limit) is consulted
+         * only every few thousand nodes, and the
+         * controlling thread's first iteration is never stopped, so
+         * that there is always a move.
+         */
+        private boolean timeUp() {
+            if ((_nodes & CLOCK_MASK) == 0 && !_stopped
+                && (System.nanoTime() > _deadline
+                    || _id == 0 && _maxNodes > 0 && _nodes >= _maxNodes)) {
+                _stopped = true;
+            }
+            return _stopped && (_id != 0 || _depthReached > 0);
         }
-        Square d = board.getBoard()[0][0];
-        Move bestM = Move.mv(d, d, d);
-        boolean defaultBestM = true;
-        while (fm.hasNext()) {
-            Move potentialm = fm.next();
-            if (potentialm == null && defaultBestM) {
-                return findMove(board, depth, saveMove, sense, alpha, beta);
+
+        /**
+         * Find a move from position BOARD and return its value, recording
+         * the move found in _lastFoundMove iff SAVEMOVE. The move
+         * should have maximal value or have value > BETA if SENSE==1,
+         * and minimal value or value < ALPHA if SENSE==-1. Searches up to
+         * DEPTH levels.  Searching at level 0 simply returns a static
+         * estimate of the board value and does not set _lastMoveFound.
+         * Positions already searched deeply enough are answered from
+         * _table.  Moves are tried in the order given by _ordering
+         * (or, if ordering is turned off, in generation order except that
+         * the best move stored in _table for BOARD comes first).  All
+         * moves after the first get a null window, and a full one only
+         * if they turn out better.  Leaves the principal variation from
+         * BOARD in _pv and _pvLength at its ply.  If the
+         * search is stopped, returns a meaningless
+         * value without recording anything.
+         */
+        private int findMove(Board board, int depth, boolean saveMove,
+                             int sense, int alpha, int beta) {
+            int ply = _rootDepth - depth;
+            _pvLength[ply] = 0;
+            _nodes += 1;
+            if (timeUp()) {
+                return 0;
             }
-            if (potentialm == null) {
-                break;
+            if (depth == 0 || board.winner() != EMPTY) {
+                long start = System.nanoTime();
+                int score = staticScore(board, _eval);
+                _stats.evaluation(System.nanoTime() - start);
+                return score;
             }
-            board.makeMove(potentialm);
-            int checkh = findMove(board, depth - 1,
-                    !saveMove, sense * -1, alpha, beta);
-            if (sense == 1) {
-                if (checkh > alpha) {
-                    alpha = checkh;
+            long key = board.key();
+            int hashMove = Move.NONE;
+            long entry = _table.find(key);
+            if (entry != 0) {
+                hashMove = TranspositionTable.move(entry);
+                if (!saveMove && TranspositionTable.depth(entry) >= depth) {
+                    int score = TranspositionTable.score(entry);
+                    switch (TranspositionTable.bound(entry)) {
+                    case TranspositionTable.EXACT:
+                        return score;
+                    case TranspositionTable.LOWER:
+                        alpha = Math.max(alpha, score);
+                        break;
+                    default:
+                        beta = Math.min(beta, score);
+                        break;
+                    }
+                    if (alpha >= beta) {
+                        return score;
+                    }
+                }
+            }
+            int alpha0 = alpha, beta0 = beta;
+            Piece my = WHITE;
+            int bestH = alpha;
+            if (sense == -1) {
+                my = BLACK;
+                bestH = beta;
+            }
+            int[] moves = moveBuffer(depth);
+            long start = System.nanoTime();
+            int arrows = saveMove ? 0 : arrowLimit(_arrowLimits, depth);
+            int n = board.generateMoves(my, moves, _sealedLo, _sealedHi,
+                                        arrows);
+            if (n == 0) {
+                n = board.generateMoves(my, moves, 0, 0, arrows);
+            }
+            _stats.generation(System.nanoTime() - start);
+            if (_ordered) {
+                _ordering.order(moves, n, hashMove, my, ply);
+            } else {
+                MoveOrdering.promote(moves, 0, n, hashMove);
+            }
+            int bestM = moves[0];
+            int tried = 0;
+            for (int i = 0; i < n; i += 1) {
+                tried += 1;
+                int potentialm = moves[i];
+                board.makeMove(potentialm);
+                int checkh;
+                if (i == 0) {
+                    checkh = findMove(board, depth - 1,
+                            false, sense * -1, alpha, beta);
+                } else if (sense == 1) {
+                    checkh = findMove(board, depth - 1,
+                            false, -1, alpha, alpha + 1);
+                    if (checkh > alpha && checkh < beta) {
+                        _stats.researched();
+                        checkh = findMove(board, depth - 1,
+                                false, -1, alpha, beta);
+                    }
+                } else {
+                    checkh = findMove(board, depth - 1,
+                            false, 1, beta - 1, beta);
+                    if (checkh < beta && checkh > alpha) {
+                        _stats.researched();
+                        checkh = findMove(board, depth - 1,
+                                false, 1, alpha, beta);
+                    }
+                }
+                board.undo();
+                if (timeUp()) {
+                    return 0;
+                }
+                boolean better = sense == 1 ? checkh > alpha : checkh < beta;
+                if (better) {
+                    if (sense == 1) {
+                        alpha = checkh;
+                    } else {
+                        beta = checkh;
+                    }
                     bestH = checkh;
                     bestM = potentialm;
-                    defaultBestM = false;
+                    _pv[ply][0] = potentialm;
+                    System.arraycopy(_pv[ply + 1], 0, _pv[ply], 1,
+                                     _pvLength[ply + 1]);
+                    _pvLength[ply] = _pvLength[ply + 1] + 1;
+                }
+                if (alpha >= beta) {
+                    if (_ordered) {
+                        _ordering.cutoff(potentialm, my, ply, depth);
+                    }
+                    break;
+                }
+            }
+            _stats.expanded(alpha >= beta, tried);
+            int bound;
+            if (bestH <= alpha0) {
+                bound = TranspositionTable.UPPER;
+            } else if (bestH >= beta0) {
+                bound = TranspositionTable.LOWER;
+            } else {
+                bound = TranspositionTable.EXACT;
+            }
+            _table.store(key, depth, bound, bestH, bestM);
+            if (saveMove) {
+                _lastFoundMove = bestM;
+            }
+            return bestH;
+        }
+
+        /**
+         * As for findMove, but searching each move as two half-plies: the
+         * queen move, and then (by findSpear) the spear throw.  Queen
+         * moves are ordered by MoveOrdering.orderQueenMoves, all but the
+         * first get a null window, and a queen move that causes a cutoff
+         * ends the search before any spears of the remaining queen moves
+         * are generated.  The position after a queen move has its own
+         * entry in _table, so a queen move already refuted in an earlier
+         * iteration is answered from there without generating its
+         * spears at all.
+         */
+        private int findSplit(Board board, int depth, boolean saveMove,
+                              int sense, int alpha, int beta) {
+            int ply = _rootDepth - depth;
+            _pvLength[ply] = 0;
+            _nodes += 1;
+            if (timeUp()) {
+                return 0;
+            }
+            if (depth == 0 || board.winner() != EMPTY) {
+                long start = System.nanoTime();
+                int score = staticScore(board, _eval);
+                _stats.evaluation(System.nanoTime() - start);
+                return score;
+            }
+            long key = board.key();
+            int hashMove = Move.NONE;
+            long entry = _table.find(key);
+            if (entry != 0) {
+                hashMove = TranspositionTable.move(entry);
+                if (!saveMove && TranspositionTable.depth(entry) >= depth) {
+                    int score = TranspositionTable.score(entry);
+                    switch (TranspositionTable.bound(entry)) {
+                    case TranspositionTable.EXACT:
+                        return score;
+                    case TranspositionTable.LOWER:
+                        alpha = Math.max(alpha, score);
+                        break;
+                    default:
+                        beta = Math.min(beta, score);
+                        break;
+                    }
+                    if (alpha >= beta) {
+                        return score;
+                    }
+                }
+            }
+            int alpha0 = alpha, beta0 = beta;
+            Piece my = sense == 1 ? WHITE : BLACK;
+            int bestH = sense == 1 ? alpha : beta;
+            int[] queens = halfPlyBuffer(_queenMoves, depth);
+            long start = System.nanoTime();
+            int n = board.generateQueenMoves(my, queens, _sealedLo,
+                                             _sealedHi);
+            if (n == 0) {
+                n = board.generateQueenMoves(my, queens, 0, 0);
+            }
+            if (!saveMove && arrowLimit(_arrowLimits, depth) > 0) {
+                board.rankSpears(my, spearRanks(depth));
+            }
+            _stats.generation(System.nanoTime() - start);
+            if (_ordered) {
+                _ordering.orderQueenMoves(queens, n, hashMove, my, ply);
+            } else {
+                MoveOrdering.promote(queens, 0, n,
+                                     MoveOrdering.queenMove(hashMove));
+            }
+            int bestM = Move.NONE;
+            int tried = 0;
+            for (int i = 0; i < n; i += 1) {
+                tried += 1;
+                int from = Move.from(queens[i]), to = Move.to(queens[i]);
+                board.moveQueen(from, to);
+                int checkh;
+                if (i == 0) {
+                    checkh = findSpear(board, depth, saveMove, sense,
+                                       alpha, beta, from, to);
+                } else if (sense == 1) {
+                    checkh = findSpear(board, depth, saveMove, 1,
+                                       alpha, alpha + 1, from, to);
+                    if (checkh > alpha && checkh < beta) {
+                        _stats.researched();
+                        checkh = findSpear(board, depth, saveMove, 1,
+                                           alpha, beta, from, to);
+                    }
+                } else {
+                    checkh = findSpear(board, depth, saveMove, -1,
+                                       beta - 1, beta, from, to);
+                    if (checkh < beta && checkh > alpha) {
+                        _stats.researched();
+                        checkh = findSpear(board, depth, saveMove, -1,
+                                           alpha, beta, from, to);
+                    }
+                }
+                board.unmoveQueen(from, to);
+                if (timeUp()) {
+                    return 0;
+                }
+                if (i == 0) {
+                    bestM = _lastSpear;
                 }
+                boolean better = sense == 1 ? checkh > alpha : checkh < beta;
+                if (better) {
+                    if (sense == 1) {
+                        alpha = checkh;
+                    } else {
+                        beta = checkh;
+                    }
+                    bestH = checkh;
+                    bestM = _lastSpear;
+                    System.arraycopy(_spearPv[ply], 0, _pv[ply], 0,
+                                     _spearPvLength[ply]);
+                    _pvLength[ply] = _spearPvLength[ply];
+                }
+                if (alpha >= beta) {
+                    if (_ordered) {
+                        _ordering.cutoff(bestM, my, ply, depth);
+                    }
+                    break;
+                }
+            }
+            _stats.expanded(alpha >= beta, tried);
+            int bound;
+            if (bestH <= alpha0) {
+                bound = TranspositionTable.UPPER;
+            } else if (bestH >= beta0) {
+                bound = TranspositionTable.LOWER;
             } else {
-                if (checkh < beta) {
-                    beta = checkh;
+                bound = TranspositionTable.EXACT;
+            }
+            _table.store(key, depth, bound, bestH, bestM);
+            if (saveMove) {
+                _lastFoundMove = bestM;
+            }
+            return bestH;
+        }
+
+        /**
+         * Return the value of the half-made move FROM-TO on BOARD (see
+         * Board.moveQueen), whose spear is yet to be thrown, searching
+         * the spears, and DEPTH - 1 plies after each, as findMove would
+         * search moves.  SENSE, ALPHA, and BETA are those of the queen
+         * move's position, and ROOT is true iff that is the root (whose
+         * half-made moves are not answered from _table).  Spears are
+         * limited by the spear limits, using the ranks findSplit left
+         * in _spearRanks, and ordered by MoveOrdering.orderSpears.  Sets
+         * _lastSpear to the code of the best whole move found, and
+         * _spearPv and _spearPvLength at my ply to the line it starts.
+         */
+        private int findSpear(Board board, int depth, boolean root,
+                              int sense, int alpha, int beta, int from,
+                              int to) {
+            int ply = _rootDepth - depth;
+            _spearPvLength[ply] = 0;
+            _nodes += 1;
+            long key = board.key();
+            int hashMove = Move.NONE;
+            long entry = _table.find(key);
+            if (entry != 0) {
+                hashMove = TranspositionTable.move(entry);
+                if (!root && TranspositionTable.depth(entry) >= depth) {
+                    int score = TranspositionTable.score(entry);
+                    switch (TranspositionTable.bound(entry)) {
+                    case TranspositionTable.EXACT:
+                        alpha = beta = score;
+                        break;
+                    case TranspositionTable.LOWER:
+                        alpha = Math.max(alpha, score);
+                        break;
+                    default:
+                        beta = Math.min(beta, score);
+                        break;
+                    }
+                    if (alpha >= beta) {
+                        _lastSpear = hashMove;
+                        _spearPv[ply][0] = hashMove;
+                        _spearPvLength[ply] = 1;
+                        return score;
+                    }
+                }
+            }
+            int alpha0 = alpha, beta0 = beta;
+            Piece my = sense == 1 ? WHITE : BLACK;
+            int bestH = sense == 1 ? alpha : beta;
+            int[] spears = halfPlyBuffer(_spears, depth);
+            long start = System.nanoTime();
+            int arrows = root ? 0 : arrowLimit(_arrowLimits, depth);
+            int n = board.generateSpears(from, to, spears, arrows,
+                                         _spearRanks[depth]);
+            _stats.generation(System.nanoTime() - start);
+            if (_ordered) {
+                _ordering.orderSpears(spears, n, hashMove, my, ply);
+            } else {
+                MoveOrdering.promote(spears, 0, n, hashMove);
+            }
+            int bestM = spears[0];
+            int tried = 0;
+            for (int i = 0; i < n; i += 1) {
+                tried += 1;
+                int potentialm = spears[i];
+                board.throwSpear(from, to, Move.spear(potentialm));
+                int checkh;
+                if (i == 0) {
+                    checkh = findSplit(board, depth - 1,
+                            false, sense * -1, alpha, beta);
+                } else if (sense == 1) {
+                    checkh = findSplit(board, depth - 1,
+                            false, -1, alpha, alpha + 1);
+                    if (checkh > alpha && checkh < beta) {
+                        _stats.researched();
+                        checkh = findSplit(board, depth - 1,
+                                false, -1, alpha, beta);
+                    }
+                } else {
+                    checkh = findSplit(board, depth - 1,
+                            false, 1, beta - 1, beta);
+                    if (checkh < beta && checkh > alpha) {
+                        _stats.researched();
+                        checkh = findSplit(board, depth - 1,
+                                false, 1, alpha, beta);
+                    }
+                }
+                board.unthrowSpear();
+                if (timeUp()) {
+                    return 0;
+                }
+                boolean better = sense == 1 ? checkh > alpha : checkh < beta;
+                if (better) {
+                    if (sense == 1) {
+                        alpha = checkh;
+                    } else {
+                        beta = checkh;
+                    }
                     bestH = checkh;
                     bestM = potentialm;
-                    defaultBestM = false;
+                    _spearPv[ply][0] = potentialm;
+                    System.arraycopy(_pv[ply + 1], 0, _spearPv[ply], 1,
+                                     _pvLength[ply + 1]);
+                    _spearPvLength[ply] = _pvLength[ply + 1] + 1;
+                }
+                if (alpha >= beta) {
+                    if (_ordered) {
+                        _ordering.cutoff(potentialm, my, ply, depth);
+                    }
+                    break;
+                }
+            }
+            _stats.expanded(alpha >= beta, tried);
+            int bound;
+            if (bestH <= alpha0) {
+                bound = TranspositionTable.UPPER;
+            } else if (bestH >= beta0) {
+                bound = TranspositionTable.LOWER;
+            } else {
+                bound = TranspositionTable.EXACT;
+            }
+            _table.store(key, depth, bound, bestH, bestM);
+            _lastSpear = bestM;
+            return bestH;
+        }
+
+        /**
+         * Return the table of spear ranks (see Board.rankSpears) for
+         * findSplit and findSpear at remaining depth DEPTH, allocating
+         * it if necessary.
+         */
+        private long[] spearRanks(int depth) {
+            if (_spearRanks[depth] == null) {
+                _spearRanks[depth] = new long[Board.SPEAR_RANK_WORDS];
+            }
+            return _spearRanks[depth];
+        }
+
+        /**
+         * Return LISTS[DEPTH], allocating it with room for
+         * Board.MAX_QUEEN_MOVES moves if necessary: a list of queen moves
+         * or spears for use by findSplit or findSpear at remaining depth
+         * DEPTH.
+         */
+        private int[] halfPlyBuffer(int[][] lists, int depth) {
+            if (lists[depth] == null) {
+                lists[depth] = new int[Board.MAX_QUEEN_MOVES];
+            }
+            return lists[depth];
+        }
+
+        /**
+         * Return a move list with room for Board.MAX_MOVES moves, for
+         * use by findMove at remaining depth DEPTH.  Each depth has its
+         * own list, since a list is still being traversed while the
+         * levels below it are searched.
+         */
+        private int[] moveBuffer(int depth) {
+            if (_moves[depth] == null) {
+                _moves[depth] = new int[Board.MAX_MOVES];
+            }
+            return _moves[depth];
+        }
+
+        /**
+         * My copy of the position being searched.
+         */
+        private final Board _board;
+
+        /**
+         * My thread number: 0 for the controlling thread.
+         */
+        private final int _id;
+
+        /**
+         * Move lists for findMove, indexed by remaining depth and
+         * allocated as needed.
+         */
+        private final int[][] _moves;
+
+        /**
+         * My move ordering heuristics.
+         */
+        private final MoveOrdering _ordering;
+
+        /**
+         * True iff moves are to be ordered by _ordering.
+         */
+        private final boolean _ordered;
+
+        /**
+         * Depth of the iteration in progress.
+         */
+        private int _rootDepth;
+
+        /**
+         * My static evaluator.
+         */
+        private final Evaluator _eval;
+
+        /**
+         * Node limit of the search (0 for none).
+         */
+        private final long _maxNodes;
+
+        /**
+         * Spear limits of the search (see SearchOptions.arrowLimits).
+         */
+        private final int[] _arrowLimits;
+
+        /**
+         * Code of the move found by the last call to findMove with
+         * SAVEMOVE.
+         */
+        private int _lastFoundMove;
+
+        /**
+         * Code of the move chosen by my deepest completed iteration.
+         */
+        private int _best;
+
+        /**
+         * Principal variation of my deepest completed iteration.
+         */
+        private int[] _line = new int[0];
+
+        /**
+         * _pv[p] holds the principal variation found by the last search
+         * at ply P of the iteration in progress, and _pvLength[p] its
+         * length.
+         */
+        private final int[][] _pv =
+            new int[SearchOptions.MAX_DEPTH + 1][SearchOptions.MAX_DEPTH];
+
+        /**
+         * Lengths of the lines in _pv.
+         */
+        private final int[] _pvLength = new int[SearchOptions.MAX_DEPTH + 1];
+
+        /**
+         * True iff I search by half-plies (see findSplit).
+         */
+        private final boolean _split;
+
+        /**
+         * Queen moves and spears for findSplit and findSpear, indexed by
+         * remaining depth and allocated as needed (null unless _split).
+         */
+        private int[][] _queenMoves, _spears;
+
+        /**
+         * _spearRanks[d] holds the spear ranks of the position findSplit
+         * is searching at remaining depth d, computed once for all its
+         * queen moves (null unless _split, and allocated as needed).
+         */
+        private long[][] _spearRanks;
+
+        /**
+         * _spearPv[p] holds the line found by the last call of findSpear
+         * at ply P, and _spearPvLength[p] its length (null unless
+         * _split).
+         */
+        private int[][] _spearPv;
+
+        /**
+         * Lengths of the lines in _spearPv.
+         */
+        private int[] _spearPvLength;
+
+        /**
+         * Code of the best move found by the last call of findSpear.
+         */
+        private int _lastSpear;
+
+        /**
+         * Value found by my deepest completed iteration.
+         */
+        private int _score;
+
+        /**
+         * Counters describing my search.
+         */
+        private final SearchStats _stats = new SearchStats();
+
+        /**
+         * Depth of my last completed iteration.
+         */
+        private int _depthReached;
+
+        /**
+         * Number of positions I have visited.
+         */
+        private long _nodes;
+    }
+
+    /**
+     * A young-brothers-wait search of one position.  Each position is
+     * searched as by Searcher.findMove until its first move has been
+     * searched.  Then, if it has at least SPLIT_DEPTH plies left, the
+     * rest of its moves (the young brothers) are searched at once as
+     * fork-join tasks (Brothers), each with a null window around the
+     * value to beat, and idle threads steal them.  In a null-window
+     * search, the first brother to beat that value is a cutoff, and
+     * the searches of its siblings, and of everything they spawned,
+     * are abandoned.  Otherwise the brothers that beat it are searched
+     * again, with the full window, in move order.
+     *
+     * So that the result does not depend on the order in which tasks
+     * finish, the transposition table is used only for results of the
+     * same depth, and the root's moves are taken in a fixed order (the
+     * previous iteration's choice first, then as generated).  A
+     * fixed-depth search therefore chooses the same move with any
+     * number of threads.
+     */
+    private class YoungBrothers {
+
+        /**
+         * A search of ROOT.
+         */
+        YoungBrothers(Board.Position root) {
+            _root = root;
+            _ordered = _options.ordering();
+            _maxNodes = _options.maxNodes();
+            _arrowLimits = _options.arrowLimits();
+        }
+
+        /**
+         * Search by iterative deepening until the time, node, or depth
+         * limit is reached, and return the code of the move chosen.
+         * Must run in a ForkJoinPool.
+         */
+        int search() {
+            Workspace ws = acquire();
+            Board board = ws._board;
+            board.copy(_root);
+            int[] moves = ws.moves(0);
+            int n = board.generateMoves(board.turn(), moves, _sealedLo,
+                                        _sealedHi);
+            if (n == 0) {
+                n = board.generateMoves(board.turn(), moves);
+            }
+            _rootMoves = Arrays.copyOf(moves, n);
+            int sense = board.turn() == WHITE ? 1 : -1;
+            for (int depth = 1; depth <= _options.maxDepth(); depth += 1) {
+                IterationEvent event = new IterationEvent();
+                event.begin();
+                long nodes = nodes();
+                int alpha = -INFTY, beta = INFTY;
+                if (_depthReached > 0 && Math.abs(_score) < WINNING_VALUE) {
+                    alpha = _score - ws._eval.aspirationWindow();
+                    beta = _score + ws._eval.aspirationWindow();
+                }
+                int value;
+                while (true) {
+                    value = node(ws, board, depth, 0, sense, alpha, beta,
+                                 null);
+                    if (stopped(null) || value > alpha && value < beta) {
+                        break;
+                    }
+                    if (value <= alpha) {
+                        alpha = -INFTY;
+                    }
+                    if (value >= beta) {
+                        beta = INFTY;
+                    }
+                    _rootStats.researched();
+                }
+                if (stopped(null)) {
+                    break;
+                }
+                _best = _rootBest;
+                _score = value;
+                _depthReached = depth;
+                MoveOrdering.promote(_rootMoves, 0, n, _best);
+                _rootStats.iteration(depth, nodes() - nodes);
+                event.finish(0, depth, nodes() - nodes, value);
+                if (Math.abs(value) == WINNING_VALUE) {
+                    break;
+                }
+                if (_deadline != Long.MAX_VALUE
+                    && System.nanoTime() - _start > (_deadline - _start) / 2) {
+                    break;
+                }
+            }
+            release(ws);
+            return _best;
+        }
+
+        /**
+         * Return the value of BOARD, searched to DEPTH plies by WS,
+         * where BOARD is PLY plies from the root, SENSE, ALPHA, and BETA
+         * are as for Searcher.findMove, and SPLIT is the split point
+         * of the nearest young brother above BOARD (null if none).  At
+         * the root, records the move chosen in _rootBest.  If the
+         * search is stopped or abandoned, returns a meaningless value
+         * without recording anything.
+         */
+        private int node(Workspace ws, Board board, int depth, int ply,
+                         int sense, int alpha, int beta, SplitPoint split) {
+            ws._nodes += 1;
+            if ((ws._nodes & CLOCK_MASK) == 0) {
+                tick();
+            }
+            if (stopped(split)) {
+                return 0;
+            }
+            if (depth == 0 || board.winner() != EMPTY) {
+                long start = System.nanoTime();
+                int score = staticScore(board, ws._eval);
+                ws._stats.evaluation(System.nanoTime() - start);
+                return score;
+            }
+            long key = board.key();
+            int hashMove = Move.NONE;
+            if (ply > 0) {
+                long entry = _table.find(key);
+                if (entry != 0) {
+                    hashMove = TranspositionTable.move(entry);
+                    if (TranspositionTable.depth(entry) == depth) {
+                        int score = TranspositionTable.score(entry);
+                        switch (TranspositionTable.bound(entry)) {
+                        case TranspositionTable.EXACT:
+                            return score;
+                        case TranspositionTable.LOWER:
+                            alpha = Math.max(alpha, score);
+                            break;
+                        default:
+                            beta = Math.min(beta, score);
+                            break;
+                        }
+                        if (alpha >= beta) {
+                            return score;
+                        }
+                    }
+                }
+            }
+            int alpha0 = alpha, beta0 = beta;
+            Piece my = sense == 1 ? WHITE : BLACK;
+            int bestH = sense == 1 ? alpha : beta;
+            int[] moves = ws.moves(depth);
+            int n;
+            if (ply == 0) {
+                n = _rootMoves.length;
+                System.arraycopy(_rootMoves, 0, moves, 0, n);
+            } else {
+                long start = System.nanoTime();
+                int arrows = arrowLimit(_arrowLimits, depth);
+                n = board.generateMoves(my, moves, _sealedLo, _sealedHi,
+                                        arrows);
+                if (n == 0) {
+                    n = board.generateMoves(my, moves, 0, 0, arrows);
+                }
+                ws._stats.generation(System.nanoTime() - start);
+                if (_ordered) {
+                    ws._ordering.order(moves, n, hashMove, my, ply);
+                } else {
+                    MoveOrdering.promote(moves, 0, n, hashMove);
+                }
+            }
+            boolean splitting = depth >= SPLIT_DEPTH && n > 1;
+            int bestM = moves[0];
+            int tried = 0;
+            for (int i = 0; i < (splitting ? 1 : n) && alpha < beta;
+                 i += 1) {
+                tried += 1;
+                int value = child(ws, board, moves[i], depth, ply, sense,
+                                  i == 0, alpha, beta, split);
+                if (stopped(split)) {
+                    return 0;
+                }
+                if (sense == 1 ? value > alpha : value < beta) {
+                    if (sense == 1) {
+                        alpha = value;
+                    } else {
+                        beta = value;
+                    }
+                    bestH = value;
+                    bestM = moves[i];
+                }
+            }
+            if (splitting && alpha < beta) {
+                tried = n;
+                SplitPoint here = new SplitPoint(split);
+                Board.Position position = board.snapshot();
+                Brother[] brothers = new Brother[n - 1];
+                for (int i = 1; i < n; i += 1) {
+                    brothers[i - 1] =
+                        new Brother(position, moves[i], depth - 1, ply + 1,
+                                    sense, alpha, beta, here);
+                }
+                ForkJoinTask.invokeAll(brothers);
+                if (stopped(split)) {
+                    return 0;
+                }
+                int lo = alpha, hi = beta;
+                for (Brother b : brothers) {
+                    if (alpha >= beta) {
+                        break;
+                    }
+                    int value = here._cut ? here._value : b.join();
+                    int move = here._cut ? here._move : b._move;
+                    if (!here._cut) {
+                        if (sense == 1 ? value <= lo : value >= hi) {
+                            continue;
+                        }
+                        ws._stats.researched();
+                        board.makeMove(move);
+                        value = node(ws, board, depth - 1, ply + 1, -sense,
+                                     alpha, beta, split);
+                        board.undo();
+                        if (stopped(split)) {
+                            return 0;
+                        }
+                    }
+                    if (sense == 1 ? value > alpha : value < beta) {
+                        if (sense == 1) {
+                            alpha = value;
+                        } else {
+                            beta = value;
+                        }
+                        bestH = value;
+                        bestM = move;
+                    }
+                }
+            }
+            if (alpha >= beta && _ordered) {
+                ws._ordering.cutoff(bestM, my, ply, depth);
+            }
+            ws._stats.expanded(alpha >= beta, tried);
+            int bound;
+            if (bestH <= alpha0) {
+                bound = TranspositionTable.UPPER;
+            } else if (bestH >= beta0) {
+                bound = TranspositionTable.LOWER;
+            } else {
+                bound = TranspositionTable.EXACT;
+            }
+            _table.store(key, depth, bound, bestH, bestM);
+            if (ply == 0) {
+                _rootBest = bestM;
+            }
+            return bestH;
+        }
+
+        /**
+         * Return the value of MOVE from BOARD, which has DEPTH plies to
+         * search and is PLY plies from the root, searched by WS with
+         * the full window ALPHA..BETA if FIRST, and otherwise with a
+         * null window, widened only if MOVE proves better.  SENSE and
+         * SPLIT are as for node.
+         */
+        private int child(Workspace ws, Board board, int move, int depth,
+                          int ply, int sense, boolean first, int alpha,
+                          int beta, SplitPoint split) {
+            board.makeMove(move);
+            int value;
+            if (first) {
+                value = node(ws, board, depth - 1, ply + 1, -sense, alpha,
+                             beta, split);
+            } else if (sense == 1) {
+                value = node(ws, board, depth - 1, ply + 1, -1, alpha,
+                             alpha + 1, split);
+                if (value > alpha && value < beta) {
+                    ws._stats.researched();
+                    value = node(ws, board, depth - 1, ply + 1, -1, alpha,
+                                 beta, split);
+                }
+            } else {
+                value = node(ws, board, depth - 1, ply + 1, 1, beta - 1,
+                             beta, split);
+                if (value < beta && value > alpha) {
+                    ws._stats.researched();
+                    value = node(ws, board, depth - 1, ply + 1, 1, alpha,
+                                 beta, split);
                 }
             }
             board.undo();
-            if (alpha >= beta) {
-                break;
+            return value;
+        }
+
+        /**
+         * Note that a workspace has visited another CLOCK_MASK + 1
+         * positions, and stop the search if its time or node limit has
+         * been reached.
+         */
+        private void tick() {
+            long counted = _counted.addAndGet(CLOCK_MASK + 1);
+            if (!_stopped && (System.nanoTime() > _deadline
+                              || _maxNodes > 0 && counted >= _maxNodes)) {
+                _stopped = true;
+            }
+        }
+
+        /**
+         * Return true iff searches below SPLIT (null for the root) should
+         * stop: the search is over, or it has been cut off.  The first
+         * iteration is never stopped, so that there is always a move.
+         */
+        private boolean stopped(SplitPoint split) {
+            return _stopped && _depthReached > 0
+                || split != null && split.abandoned();
+        }
+
+        /**
+         * Return an idle workspace, creating one if necessary.
+         */
+        private Workspace acquire() {
+            Workspace ws = _idle.poll();
+            if (ws == null) {
+                ws = new Workspace();
+                _all.add(ws);
+            }
+            return ws;
+        }
+
+        /**
+         * Return WS to the idle workspaces.
+         */
+        private void release(Workspace ws) {
+            _idle.push(ws);
+        }
+
+        /**
+         * Return the number of positions visited so far.  Valid only
+         * when no tasks are running.
+         */
+        private long nodes() {
+            long total = 0;
+            for (Workspace ws : _all) {
+                total += ws._nodes;
+            }
+            return total;
+        }
+
+        /**
+         * Return a description of the search, once it is over.
+         */
+        SearchStats stats() {
+            SearchStats total = new SearchStats();
+            total.add(_rootStats);
+            for (Workspace ws : _all) {
+                total.add(ws._stats);
             }
+            total.visited(nodes());
+            return total;
         }
-        if (saveMove) {
-            _lastFoundMove = bestM;
+
+        /**
+         * A search of one young brother: a move from a position at a
+         * split point, with a null window.
+         */
+        private class Brother extends RecursiveTask<Integer> {
+
+            /**
+             * A task searching MOVE from POSITION to DEPTH plies, where
+             * the position after MOVE is PLY plies from the root, and
+             * POSITION is being searched with SENSE and the window
+             * ALPHA..BETA at split point SPLIT.
+             */
+            Brother(Board.Position position, int move, int depth, int ply,
+                    int sense, int alpha, int beta, SplitPoint split) {
+                _position = position;
+                _move = move;
+                _depth = depth;
+                _ply = ply;
+                _sense = sense;
+                _alpha = alpha;
+                _beta = beta;
+                _split = split;
+            }
+
+            @Override
+            protected Integer compute() {
+                Workspace ws = acquire();
+                try {
+                    Board board = ws._board;
+                    board.copy(_position);
+                    board.makeMove(_move);
+                    int lo = _sense == 1 ? _alpha : _beta - 1;
+                    int value = node(ws, board, _depth, _ply, -_sense, lo,
+                                     lo + 1, _split);
+                    if (!stopped(_split)
+                        && (_sense == 1 ? value >= _beta : value <= _alpha)) {
+                        _split.cut(_move, value);
+                    }
+                    return value;
+                } finally {
+                    release(ws);
+                }
+            }
+
+            /**
+             * The position at the split point.
+             */
+            private final Board.Position _position;
+
+            /**
+             * The move I search, and its remaining depth and ply.
+             */
+            private final int _move, _depth, _ply;
+
+            /**
+             * The sense and window of the split point's search.
+             */
+            private final int _sense, _alpha, _beta;
+
+            /**
+             * The split point.
+             */
+            private final SplitPoint _split;
         }
-        return bestH;
+
+        /**
+         * The position searched.
+         */
+        private final Board.Position _root;
+
+        /**
+         * The root's moves, in the order to be tried.
+         */
+        private int[] _rootMoves;
+
+        /**
+         * True iff moves below the root are ordered by MoveOrdering.
+         */
+        private final boolean _ordered;
+
+        /**
+         * Node limit of the search (0 for none).
+         */
+        private final long _maxNodes;
+
+        /**
+         * Spear limits of the search (see SearchOptions.arrowLimits).
+         */
+        private final int[] _arrowLimits;
+
+        /**
+         * Positions visited, counted CLOCK_MASK + 1 at a time.
+         */
+        private final AtomicLong _counted = new AtomicLong();
+
+        /**
+         * Idle workspaces.
+         */
+        private final ConcurrentLinkedDeque<Workspace> _idle =
+            new ConcurrentLinkedDeque<>();
+
+        /**
+         * All workspaces created by the search.
+         */
+        private final ConcurrentLinkedQueue<Workspace> _all =
+            new ConcurrentLinkedQueue<>();
+
+        /**
+         * Counters for the root's iterations and re-searches.
+         */
+        private final SearchStats _rootStats = new SearchStats();
+
+        /**
+         * Move chosen by the last search of the root.
+         */
+        private int _rootBest;
+
+        /**
+         * Move chosen and value found by the deepest completed
+         * iteration, and its depth.
+         */
+        private int _best, _score, _depthReached;
     }
 
     /**
-     * Return a heuristically determined maximum search depth
-     * based on characteristics of BOARD.
+     * A position at which young brothers are being searched in
+     * parallel.
      */
-    private int maxDepth(Board board) {
-        int N = board.numMoves();
-        int heuristic;
-        if (N < 2) {
-            heuristic = 3;
-        } else if (N < 5) {
-            heuristic = 6;
-        } else if (N < 8) {
-            heuristic = 8;
-        } else {
-            heuristic = 10;
+    private static final class SplitPoint {
+
+        /**
+         * A split point below PARENT (null if none).
+         */
+        SplitPoint(SplitPoint parent) {
+            _parent = parent;
+        }
+
+        /**
+         * Record that MOVE, with value VALUE, causes a cutoff here, so
+         * that the searches of the other moves are to be abandoned.
+         * Only the first cutoff counts.
+         */
+        synchronized void cut(int move, int value) {
+            if (!_cut) {
+                _move = move;
+                _value = value;
+                _cut = true;
+            }
+        }
+
+        /**
+         * Return true iff there has been a cutoff here or at a split
+         * point above.
+         */
+        boolean abandoned() {
+            for (SplitPoint p = this; p != null; p = p._parent) {
+                if (p._cut) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * The split point above, or null.
+         */
+        private final SplitPoint _parent;
+
+        /**
+         * True once a move has caused a cutoff here.
+         */
+        private volatile boolean _cut;
+
+        /**
+         * The move that caused the cutoff, and its value.
+         */
+        private int _move, _value;
+    }
+
+    /**
+     * The state a fork-join task needs for searching: a board, move
+     * lists, an evaluator, move ordering, and counters.  A workspace
+     * is used by one task at a time.
+     */
+    private class Workspace {
+
+        /**
+         * Return the move list for remaining depth DEPTH, allocating it
+         * if necessary.
+         */
+        int[] moves(int depth) {
+            if (_moves[depth] == null) {
+                _moves[depth] = new int[Board.MAX_MOVES];
+            }
+            return _moves[depth];
+        }
+
+        /**
+         * The board searched.
+         */
+        private final Board _board = new Board();
+
+        /**
+         * Move lists, indexed by remaining depth.
+         */
+        private final int[][] _moves = new int[SearchOptions.MAX_DEPTH + 1][];
+
+        /**
+         * Move ordering heuristics.
+         */
+        private final MoveOrdering _ordering = new MoveOrdering();
+
+        /**
+         * Static evaluator.
+         */
+        private final Evaluator _eval = Evaluator.create(_options);
+
+        /**
+         * Counters.
+         */
+        private final SearchStats _stats = new SearchStats();
+
+        /**
+         * Positions visited.
+         */
+        private long _nodes;
+    }
+
+    /**
+     * Return the move lists for the searcher with thread number ID,
+     * indexed by remaining depth.  The lists are kept from one search to
+     * the next, so that a search allocates nothing per position.
+     */
+    private int[][] moveLists(int id) {
+        if (id >= _moveLists.size()) {
+            _moveLists.add(new int[SearchOptions.MAX_DEPTH + 1][]);
+        }
+        return _moveLists.get(id);
+    }
+
+    /**
+     * Return the move ordering for the searcher with thread number ID,
+     * which is kept from one search to the next.
+     */
+    private MoveOrdering ordering(int id) {
+        if (id >= _orderings.size()) {
+            _orderings.add(new MoveOrdering());
+        }
+        return _orderings.get(id);
+    }
+
+    /**
+     * Return the number of spears to try per queen move, by LIMITS (see
+     * SearchOptions.arrowLimits), at a position other than the root
+     * with DEPTH plies left to search.  0 means all of them.
+     */
+    private static int arrowLimit(int[] limits, int depth) {
+        if (limits.length == 0) {
+            return 0;
         }
-        return heuristic;
+        return limits[Math.min(depth, limits.length) - 1];
     }
 
     /**
-     * Return a heuristic value for BOARD.
+     * Return a heuristic value for BOARD (positive if good for white),
+     * as estimated by EVAL if the game is not over.  Package-private
+     * for the benchmarks.
      */
-    private int staticScore(Board board) {
+    static int staticScore(Board board, Evaluator eval) {
         Piece winner = board.winner();
         if (winner == BLACK) {
             return -WINNING_VALUE;
         } else if (winner == WHITE) {
             return WINNING_VALUE;
         }
-        int h = 0;
-        if (_myPiece == Piece.WHITE) {
-            for (Square q : board.getQueenposw()) {
-                Iterator<Square> allmoves = board.reachableFrom(q, null);
-                while (allmoves.hasNext()) {
-                    allmoves.next();
-                    h += 1;
-                }
-            }
-        } else {
-            for (Square q : board.getQueenposb()) {
-                Iterator<Square> allmoves = board.reachableFrom(q, null);
-                while (allmoves.hasNext()) {
-                    allmoves.next();
-                    h += 1;
-                }
-            }
-        }
-        return h;
+        return eval.evaluate(board);
     }
 
+    /**
+     * Results of earlier searches, shared by all my searches and all
+     * their threads.
+     */
+    private final TranspositionTable _table;
+
+    /**
+     * The options controlling my searches.
+     */
+    private final SearchOptions _options;
+
+    /**
+     * Move lists for each searching thread, indexed by thread number.
+     */
+    private final List<int[][]> _moveLists = new ArrayList<>();
+
+    /**
+     * Move ordering for each searching thread, indexed by thread number.
+     */
+    private final List<MoveOrdering> _orderings = new ArrayList<>();
+
+    /**
+     * Helper threads for multi-threaded searches, or null if none have
+     * been needed yet.
+     */
+    private ExecutorService _helpers;
+
+    /**
+     * Number of threads in _helpers.
+     */
+    private int _helperCount;
+
+    /**
+     * The thread for pondering, or null if I have not pondered yet.
+     */
+    private ExecutorService _ponderer;
+
+    /**
+     * The search of the position I expect after my opponent's reply,
+     * running while my opponent thinks, or null if I am not pondering.
+     * Pondering is started and ended only by my controller's thread.
+     */
+    private Future<Integer> _ponder;
+
+    /**
+     * Board.key() of the position _ponder is searching.
+     */
+    private long _ponderKey;
+
+    /**
+     * Times (as from System.nanoTime) at which the current search
+     * started and must stop.
+     */
+    private volatile long _start, _deadline;
+
+    /**
+     * True once the current search is to stop: its time is up or the
+     * controlling thread has finished.
+     */
+    private volatile boolean _stopped;
+
+    /**
+     * True iff stop() has been called since the last prepareSearch().
+     */
+    private volatile boolean _stopRequested;
+
+    /**
+     * True iff prepareSearch() has been called and the search it
+     * prepared for has not yet begun.
+     */
+    private volatile boolean _prepared;
+
+    /**
+     * Depth of the deepest completed iteration of the last search.
+     */
+    private int _depthReached;
+
+    /**
+     * Number of positions visited by the last search, over all
+     * threads.
+     */
+    private long _nodes;
+
+    /**
+     * Value found by the last search (see score()).
+     */
+    private int _score;
+
+    /**
+     * Principal variation of the last search.
+     */
+    private int[] _pv = new int[0];
+
+    /**
+     * Description of the last search.
+     */
+    private SearchStats _stats = new SearchStats();
+
+    /**
+     * How the last move was chosen: "search", "ponder", "book", or
+     * "solver".
+     */
+    private String _source = "search";
+
+    /**
+     * The summary of my last search returned by statistics(), or null.
+     * Replaced whole when findMove returns, so that the input thread
+     * may read it while my pondering changes the fields it describes.
+     */
+    private volatile String _statistics;
+
+    /**
+     * The squares of regions of the current search's position that hold
+     * queens of only one color.  Queens there are not moved by the
+     * search unless they have the only moves.
+     */
+    private long _sealedLo, _sealedHi;
+
+
+    /**
+     * Fork-join pools for young-brothers-wait searches, indexed by
+     * parallelism.
+     */
+    private static final Map<Integer, ForkJoinPool> POOLS = new HashMap<>();
+
+    /**
+     * Fewest plies left at which a young-brothers-wait search searches
+     * a position's moves in parallel.
+     */
+    private static final int SPLIT_DEPTH = 2;
+
+    /**
+     * The clock is read when the node count has none of these bits set.
+     */
+    private static final long CLOCK_MASK = (1 << 12) - 1;
 
 }
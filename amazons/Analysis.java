@@ -0,0 +1,189 @@
+package amazons;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static amazons.Piece.*;
+import static amazons.Utils.error;
+
+/** Offline analysis of many positions at once.  Each line of the input
+ *  describes a position by the moves leading to it from the initial
+ *  position, separated by blanks (as in Benchmark), and everything
+ *  after a '#' is a comment.  Each position is searched by an AI with
+ *  the given SearchOptions, several positions at a time on a
+ *  ForkJoinPool, and one line is written per input line, in input
+ *  order, as soon as it and all the lines before it are done:
+ *  <pre>
+ *  N MOVE SCORE DEPTH NODES pv MOVE...
+ *  </pre>
+ *  where N is the input line number, MOVE the move chosen, SCORE its
+ *  value (positive if good for White), DEPTH the depth searched, and
+ *  the moves after "pv" the line of play the search expects.  Positions
+ *  that are already won are reported as "N over WINNER", and bad lines
+ *  as "N error MESSAGE".  Finished lines wait in a reordering buffer
+ *  for the ones before them; the buffer holds at most a fixed number of
+ *  positions, so reading never gets far ahead of writing.
+ *  @author Joseph Park
+ */
+class Analysis {
+
+    /** An analysis that searches according to OPTIONS, PARALLEL
+     *  positions at a time, holding at most BUFFERED positions that
+     *  are being searched or waiting to be written. */
+    Analysis(SearchOptions options, int parallel, int buffered) {
+        if (parallel < 1 || buffered < parallel) {
+            throw error("bad analysis parameters");
+        }
+        _options = options;
+        _parallel = parallel;
+        _buffered = buffered;
+    }
+
+    /** Analyze the positions in INPUT, writing the results to OUT.
+     *  Each search, when it finishes, writes whatever results are then
+     *  ready in order, so that output keeps up with the searches even
+     *  while reading waits for more input. */
+    void run(BufferedReader input, PrintStream out) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(_parallel);
+        Deque<CompletableFuture<String>> pending = new ArrayDeque<>();
+        try {
+            int number = 0;
+            for (String line = input.readLine(); line != null;
+                 line = input.readLine()) {
+                number += 1;
+                int n = number;
+                String moves = line;
+                CompletableFuture<String> result;
+                synchronized (pending) {
+                    awaitPending(pending, _buffered - 1);
+                    result = CompletableFuture.supplyAsync(
+                        () -> analyze(n, moves), pool);
+                    pending.addLast(result);
+                }
+                result.whenComplete((r, excp) -> flush(pending, out));
+            }
+            synchronized (pending) {
+                awaitPending(pending, 0);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Write to OUT and remove the results at the head of PENDING that
+     *  are done, stopping at the first failed one, and wake any thread
+     *  waiting in awaitPending. */
+    private static void flush(Deque<CompletableFuture<String>> pending,
+                              PrintStream out) {
+        synchronized (pending) {
+            while (!pending.isEmpty() && pending.peekFirst().isDone()
+                   && !pending.peekFirst().isCompletedExceptionally()) {
+                out.println(pending.removeFirst().join());
+            }
+            pending.notifyAll();
+        }
+    }
+
+    /** Wait, holding PENDING's lock, until no more than LIMIT of its
+     *  results remain to be written. */
+    private static void awaitPending(
+        Deque<CompletableFuture<String>> pending, int limit) {
+        while (pending.size() > limit) {
+            CompletableFuture<String> first = pending.peekFirst();
+            if (first.isCompletedExceptionally()) {
+                await(first);
+            }
+            try {
+                pending.wait();
+            } catch (InterruptedException excp) {
+                throw new IllegalStateException(excp);
+            }
+        }
+    }
+
+    /** Return the default number of positions to analyze at once with
+     *  OPTIONS: enough to keep every processor busy. */
+    static int defaultParallel(SearchOptions options) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, cores / options.threads());
+    }
+
+    /** Return the result line for the position on input line NUMBER,
+     *  reached by MOVES. */
+    private String analyze(int number, String moves) {
+        Board board;
+        try {
+            board = position(moves);
+        } catch (IllegalArgumentException excp) {
+            return String.format("%d error %s", number, excp.getMessage());
+        }
+        if (board.winner() != EMPTY) {
+            return String.format("%d over %s", number,
+                                 board.winner().toName());
+        }
+        AI ai = player(board.turn());
+        Move move = ai.findMove(board);
+        return String.format("%d %s %d %d %d pv %s", number, move,
+                             ai.score(), ai.depthReached(), ai.nodes(),
+                             AI.line(ai.principalVariation()));
+    }
+
+    /** Return the position reached by MOVES, a line of input. */
+    static Board position(String moves) {
+        Board board = new Board();
+        int comment = moves.indexOf('#');
+        if (comment >= 0) {
+            moves = moves.substring(0, comment);
+        }
+        for (String text : moves.trim().split("\\s+")) {
+            if (text.isEmpty()) {
+                continue;
+            }
+            Move move = Move.mv(text);
+            if (move == null || board.get(move.from()) != board.turn()
+                || !board.isLegal(move)) {
+                throw error("illegal move %s", text);
+            }
+            board.makeMove(move);
+        }
+        return board;
+    }
+
+    /** Return this thread's AI playing SIDE.  Each pool thread keeps one
+     *  AI per side, so that its transposition table is allocated once,
+     *  not once per position. */
+    private AI player(Piece side) {
+        AI[] players = _players.get();
+        int k = side == WHITE ? 0 : 1;
+        if (players[k] == null) {
+            players[k] = new AI(side, null, _options);
+        }
+        return players[k];
+    }
+
+    /** Wait for RESULT and return it. */
+    private static String await(Future<String> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** The options for searches. */
+    private final SearchOptions _options;
+    /** Number of positions searched at once. */
+    private final int _parallel;
+    /** Largest number of positions in progress or awaiting output. */
+    private final int _buffered;
+    /** The White and Black players of each pool thread. */
+    private final ThreadLocal<AI[]> _players =
+        ThreadLocal.withInitial(() -> new AI[2]);
+}
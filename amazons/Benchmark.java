@@ -0,0 +1,287 @@
+package amazons;
+
+import java.lang.management.ManagementFactory;
+
+import static amazons.Utils.error;
+
+/** Timing runs of the engine on a fixed set of positions, for comparing
+ *  versions and configurations.  Run as
+ *  "java amazons.Benchmark MODE [ARGS...]"; see main for the modes.
+ *  @author Joseph Park
+ */
+final class Benchmark {
+
+    /** Not instantiable. */
+    private Benchmark() {
+    }
+
+    /** Names of the benchmark positions. */
+    static final String[] POSITIONS = { "opening", "middlegame", "endgame" };
+
+    /** Moves leading from the initial position to each of POSITIONS. */
+    private static final String[] GAMES = {
+        "a4-b5(d5) j7-h7(e10) b5-a4(e8) d10-c10(a10)",
+
+        "a4-b5(d5) j7-h7(e10) b5-a4(e8) d10-c10(a10) j4-h4(b4) h7-d7(d10) "
+        + "g1-e1(g3) d7-h7(f7) h4-g4(f4) a7-a6(d3) g4-i6(i8) h7-h4(i5) "
+        + "i6-g6(h5) c10-c7(a9) e1-c3(e1) c7-c5(d4) c3-c4(b3) h4-i3(h3) "
+        + "a4-a2(j2) i3-b10(c9) g6-f6(g5) c5-c7(c6) d1-e2(c2) a6-c8(d9)",
+
+        "a4-b5(d5) j7-h7(e10) b5-a4(e8) d10-c10(a10) j4-h4(b4) h7-d7(d10) "
+        + "g1-e1(g3) d7-h7(f7) h4-g4(f4) a7-a6(d3) g4-i6(i8) h7-h4(i5) "
+        + "i6-g6(h5) c10-c7(a9) e1-c3(e1) c7-c5(d4) c3-c4(b3) h4-i3(h3) "
+        + "a4-a2(j2) i3-b10(c9) g6-f6(g5) c5-c7(c6) d1-e2(c2) a6-c8(d9) "
+        + "c4-c5(a7) c8-a8(c8) a2-a6(a1) g10-j10(j5) e2-f3(f1) c7-a5(b6) "
+        + "f6-e7(d8) j10-f6(j6) c5-c4(b5) f6-h8(j10) e7-g9(i9) h8-h10(h8) "
+        + "f3-e4(e7) a8-b8(e5) g9-g6(g9) h10-f10(h10) e4-e3(c1) a5-a2(a4) "
+        + "c4-c3(c5) b8-b7(b9) g6-e4(g6) b7-b8(d6) e3-f2(i2) a2-a3(a2)",
+    };
+
+    /** Return a new Board holding the benchmark position NAME, one of
+     *  POSITIONS. */
+    static Board position(String name) {
+        for (int i = 0; i < POSITIONS.length; i += 1) {
+            if (POSITIONS[i].equals(name)) {
+                Board board = new Board();
+                for (String mv : GAMES[i].split("\\s+")) {
+                    board.makeMove(Move.mv(mv));
+                }
+                return board;
+            }
+        }
+        throw error("unknown position: %s", name);
+    }
+
+    /** Time fixed-depth searches of each position to DEPTH with the
+     *  parallel search STRATEGY (one of SearchOptions.STRATEGIES) on 1,
+     *  2, 4, ... up to MAXTHREADS threads, reporting time to depth, the
+     *  move chosen, and speedup over the single-threaded "smp" search
+     *  (that is, the plain recursive search). */
+    static void smp(String strategy, int depth, int maxThreads) {
+        System.out.printf("%-11s %7s %10s %8s %12s  %s%n",
+                          "position", "threads", "time (s)", "speedup",
+                          "nodes", "move");
+        for (String name : POSITIONS) {
+            Board board = position(name);
+            double base = 0;
+            for (int n = strategy.equals("smp") ? 1 : 0; n <= maxThreads;
+                 n = Math.max(1, 2 * n)) {
+                SearchOptions options = new SearchOptions();
+                options.setMoveTime(0);
+                options.setMaxDepth(depth);
+                options.setThreads(Math.max(1, n));
+                options.setStrategy(n == 0 ? "smp" : strategy);
+                AI ai = new AI(board.turn(), null, options);
+                long start = System.nanoTime();
+                Move move = ai.findMove(board);
+                double secs = (System.nanoTime() - start) / 1e9;
+                if (n <= 1 && base == 0) {
+                    base = secs;
+                }
+                System.out.printf("%-11s %7s %10.3f %8.2f %12d  %s%n",
+                                  name, n == 0 ? "base" : n, secs,
+                                  base / secs, ai.nodes(), move);
+            }
+        }
+    }
+
+    /** Search each position to DEPTH on one thread with move ordering
+     *  off and on, reporting the nodes visited and the reduction due to
+     *  ordering. */
+    static void order(int depth) {
+        System.out.printf("%-11s %12s %12s %10s%n",
+                          "position", "unordered", "ordered", "reduction");
+        for (String name : POSITIONS) {
+            Board board = position(name);
+            long[] nodes = new long[2];
+            for (int k = 0; k < 2; k += 1) {
+                SearchOptions options = new SearchOptions();
+                options.setMoveTime(0);
+                options.setMaxDepth(depth);
+                options.setOrdering(k == 1);
+                AI ai = new AI(board.turn(), null, options);
+                ai.findMove(board);
+                nodes[k] = ai.nodes();
+            }
+            System.out.printf("%-11s %12d %12d %9.1f%%%n", name, nodes[0],
+                              nodes[1], 100.0 * (nodes[0] - nodes[1])
+                              / nodes[0]);
+        }
+    }
+
+    /** Search each position to DEPTH on one thread by whole moves and by
+     *  half-plies (see SearchOptions.splitPly), reporting the time, the
+     *  positions visited (counting half-made moves, for the split
+     *  search), the effective branching factor, and the move chosen. */
+    static void split(int depth) {
+        System.out.printf("%-11s %-6s %10s %12s %6s  %s%n", "position",
+                          "search", "time (s)", "nodes", "EBF", "move");
+        for (String name : POSITIONS) {
+            Board board = position(name);
+            for (int k = 0; k < 2; k += 1) {
+                SearchOptions options = new SearchOptions();
+                options.setMoveTime(0);
+                options.setMaxDepth(depth);
+                options.setSplitPly(k == 1);
+                AI ai = new AI(board.turn(), null, options);
+                long start = System.nanoTime();
+                Move move = ai.findMove(board);
+                double secs = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%-11s %-6s %10.3f %12d %6.1f  %s%n",
+                                  name, k == 1 ? "split" : "whole", secs,
+                                  ai.nodes(),
+                                  ai.searchStats().branchingFactor(), move);
+            }
+        }
+    }
+
+    /** Search each position for MILLIS milliseconds on one thread with
+     *  all spears and with the spear limits LIMITS (as for the "arrows"
+     *  search option), each by whole moves and by half-plies, reporting
+     *  the depth reached, the positions visited and visited per second,
+     *  and the move chosen. */
+    static void arrows(long millis, String limits) {
+        System.out.printf("%-11s %-10s %-6s %6s %12s %10s  %s%n",
+                          "position", "spears", "search", "depth", "nodes",
+                          "nodes/s", "move");
+        for (String name : POSITIONS) {
+            Board board = position(name);
+            for (String arrows : new String[] { "all", limits }) {
+                for (String split : new String[] { "off", "on" }) {
+                    SearchOptions options = new SearchOptions();
+                    options.setMoveTime(millis);
+                    options.set("arrows", arrows);
+                    options.set("split", split);
+                    AI ai = new AI(board.turn(), null, options);
+                    Move move = ai.findMove(board);
+                    System.out.printf("%-11s %-10s %-6s %6d %12d %10.0f  "
+                                      + "%s%n", name, arrows,
+                                      split.equals("on") ? "split" : "whole",
+                                      ai.depthReached(), ai.nodes(),
+                                      ai.searchStats().nodesPerSecond(),
+                                      move);
+                }
+            }
+        }
+    }
+
+    /** Search each position to DEPTH on one thread, reporting the bytes
+     *  allocated per node visited.  Each search is run once beforehand
+     *  so that the AI's move lists already exist and only the search
+     *  proper is measured.  Needs a JVM whose ThreadMXBean reports
+     *  allocation (as HotSpot's does). */
+    static void alloc(int depth) {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        long self = Thread.currentThread().getId();
+        System.out.printf("%-11s %12s %14s %12s%n",
+                          "position", "nodes", "bytes", "bytes/node");
+        for (String name : POSITIONS) {
+            Board board = position(name);
+            SearchOptions options = new SearchOptions();
+            options.setMoveTime(0);
+            options.setMaxDepth(depth);
+            AI ai = new AI(board.turn(), null, options);
+            ai.findMove(board);
+            long before = threads.getThreadAllocatedBytes(self);
+            ai.findMove(board);
+            long bytes = threads.getThreadAllocatedBytes(self) - before;
+            System.out.printf("%-11s %12d %14d %12.4f%n", name, ai.nodes(),
+                              bytes, (double) bytes / ai.nodes());
+        }
+    }
+
+    /** Evaluate each position with each of Evaluator.NAMES repeatedly
+     *  for about MILLIS milliseconds, reporting evaluations per
+     *  second. */
+    static void eval(long millis) {
+        System.out.printf("%-11s %-10s %12s %14s%n",
+                          "position", "evaluator", "score", "evals/s");
+        for (String name : POSITIONS) {
+            Board board = position(name);
+            for (String kind : Evaluator.NAMES) {
+                Evaluator eval = Evaluator.create(kind);
+                int score = eval.evaluate(board);
+                long count = 0;
+                long start = System.nanoTime(),
+                    end = start + millis * 1_000_000;
+                long now;
+                do {
+                    for (int i = 0; i < EVAL_BATCH; i += 1) {
+                        score = eval.evaluate(board);
+                    }
+                    count += EVAL_BATCH;
+                    now = System.nanoTime();
+                } while (now < end);
+                System.out.printf("%-11s %-10s %12d %14.0f%n", name, kind,
+                                  score, count / ((now - start) / 1e9));
+            }
+        }
+    }
+
+    /** Number of evaluations eval times between readings of the
+     *  clock. */
+    private static final int EVAL_BATCH = 1000;
+
+    /** Print a usage message and exit. */
+    private static void usage() {
+        System.err.println("Usage: java amazons.Benchmark smp [DEPTH "
+                           + "[MAXTHREADS]]");
+        System.err.println("       java amazons.Benchmark ybwc [DEPTH "
+                           + "[MAXTHREADS]]");
+        System.err.println("       java amazons.Benchmark alloc [DEPTH]");
+        System.err.println("       java amazons.Benchmark eval [MILLIS]");
+        System.err.println("       java amazons.Benchmark order [DEPTH]");
+        System.err.println("       java amazons.Benchmark split [DEPTH]");
+        System.err.println("       java amazons.Benchmark arrows [MILLIS "
+                           + "[K,...]]");
+        System.exit(1);
+    }
+
+    /** Run the benchmark given by ARGS: "smp [DEPTH [MAXTHREADS]]"
+     *  measures time-to-depth scaling of the multi-threaded search, and
+     *  "ybwc [DEPTH [MAXTHREADS]]" the same for the young-brothers-wait
+     *  search (against the single-threaded search, labeled "base"), and
+     *  "alloc [DEPTH]" measures heap allocation per searched node, and
+     *  "eval [MILLIS]" measures the speed of the static evaluators, and
+     *  "order [DEPTH]" measures the effect of move ordering, and
+     *  "split [DEPTH]" compares the whole-move and split-ply
+     *  searches, and "arrows [MILLIS [K,...]]" compares the depths
+     *  reached in a fixed time with and without spear limits. */
+    public static void main(String... args) {
+        if (args.length == 0) {
+            usage();
+        }
+        try {
+            switch (args[0]) {
+            case "smp":
+            case "ybwc":
+                smp(args[0], args.length > 1 ? Integer.parseInt(args[1]) : 3,
+                    args.length > 2 ? Integer.parseInt(args[2])
+                    : Runtime.getRuntime().availableProcessors());
+                break;
+            case "alloc":
+                alloc(args.length > 1 ? Integer.parseInt(args[1]) : 3);
+                break;
+            case "order":
+                order(args.length > 1 ? Integer.parseInt(args[1]) : 3);
+                break;
+            case "split":
+                split(args.length > 1 ? Integer.parseInt(args[1]) : 3);
+                break;
+            case "arrows":
+                arrows(args.length > 1 ? Long.parseLong(args[1]) : 2000,
+                       args.length > 2 ? args[2] : "2,4");
+                break;
+            case "eval":
+                eval(args.length > 1 ? Long.parseLong(args[1]) : 1000);
+                break;
+            default:
+                usage();
+            }
+        } catch (NumberFormatException excp) {
+            usage();
+        }
+    }
+}
@@ -1,35 +1,72 @@
 package amazons;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Stack;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
 
 import static amazons.Piece.*;
 
-/** The state of an Amazons Game.
+/** The state of an Amazons Game.  The contents of the board are kept as
+ *  three 100-bit occupancy masks (white queens, black queens, and
+ *  spears), each split over two longs: bit K of the LO word is square K
+ *  (0 <= K < 64), and bit K of the HI word is square 64 + K.  Queen
+ *  reachability is computed from these masks a whole ray at a time.
+ *
+ *  A Board's state lives entirely in the Board itself (Squares are
+ *  immutable and shared), so distinct Boards are independent.  A Board
+ *  is not synchronized: each should be used by one thread at a time,
+ *  and a position is handed to another thread as an immutable
+ *  Position (see snapshot), from which that thread makes its own
+ *  Board.
  *  @author Joseph Park
  */
 class Board {
 
     /** The number of squares on a side of the board. */
     static final int SIZE = 10;
+    /** An upper bound on the number of legal moves in any position: four
+     *  queens, each with at most 35 destinations, each with at most 35
+     *  spear throws.  This is the size a move buffer for generateMoves
+     *  needs to be. */
+    static final int MAX_MOVES = 4 * 35 * 35;
+    /** An upper bound on the number of queen moves in any position, and
+     *  so on the number of spear throws after any one of them: the size
+     *  a buffer for generateQueenMoves or generateSpears needs to be. */
+    static final int MAX_QUEEN_MOVES = 4 * 35;
+    /** Number of ranks of spear squares (see rankSpears). */
+    static final int SPEAR_RANKS = 2 * SIZE + 1;
+    /** The size of a table of spear ranks (see rankSpears). */
+    static final int SPEAR_RANK_WORDS = 2 * SPEAR_RANKS;
+    /** The distance queenDistances and kingDistances give to squares
+     *  that cannot be reached. */
+    static final int UNREACHABLE = SIZE * SIZE;
     /** list of white queen. */
     private static final int[][] STARTPOSW =
             new int[][] {{3, 0}, {6, 0}, {0, 3}, {9, 3}};
     /** list of black queen. */
     private static final int[][] STARTPOSB =
             new int[][] {{3, 9}, {6, 9}, {0, 6}, {9, 6}};
-    /** all squares. */
-    private Square[][] board;
     /** total num moves. */
     private int totalmoves;
-    /** current white queen pos. */
-    private ArrayList<Square> queenposw = new ArrayList<>();
-    /** current black queen pos. */
-    private ArrayList<Square> queenposb = new ArrayList<>();
-    /** all made moves. */
-    private Stack<Move> allMoves = new Stack<>();
+    /** White queen occupancy (squares 0-63 and 64-99). */
+    private long _whiteLo, _whiteHi;
+    /** Black queen occupancy (squares 0-63 and 64-99). */
+    private long _blackLo, _blackHi;
+    /** Spear occupancy (squares 0-63 and 64-99). */
+    private long _spearLo, _spearHi;
+    /** Zobrist hash of the current contents and side to move. */
+    private long _key;
+    /** Codes of all made moves; the first totalmoves are current.  Every
+     *  move fills a square, so there can be no more than SIZE * SIZE. */
+    private final int[] _history = new int[SIZE * SIZE];
+    /** Scratch space for reach. */
+    private final long[] _reach = new long[2];
+    /** Spear ranks for generateMoves (see rankSpears), allocated when
+     *  first used. */
+    private long[] _ranks;
 
     /** Initializes a game board with SIZE squares on a side in the
      *  initial position. */
@@ -42,59 +79,103 @@ class Board {
         copy(model);
     }
 
+    /** Initializes a board in POSITION. */
+    Board(Position position) {
+        copy(position);
+    }
+
     /** Copies MODEL into me. */
     void copy(Board model) {
-        init();
+        if (model == this) {
+            return;
+        }
         this._turn = model._turn;
         this._winner = model._winner;
-        for (int i = 0; i < board.length; i += 1) {
-            for (int j = 0; j < board[0].length; j += 1) {
-                this.board[i][j].setPiece(model.board[i][j].getPiece());
-            }
-        }
+        this._whiteLo = model._whiteLo;
+        this._whiteHi = model._whiteHi;
+        this._blackLo = model._blackLo;
+        this._blackHi = model._blackHi;
+        this._spearLo = model._spearLo;
+        this._spearHi = model._spearHi;
+        this._key = model._key;
         this.totalmoves = model.totalmoves;
-        this.queenposb.clear();
-        for (int i = 0; i < model.queenposb.size(); i += 1) {
-            this.queenposb.add(board[model.queenposb.get(i).row()]
-                    [model.queenposb.get(i).col()]);
+        System.arraycopy(model._history, 0, _history, 0, totalmoves);
+    }
+
+    /** Puts me in POSITION, with its history of moves. */
+    void copy(Position position) {
+        long[] bits = position._bits;
+        _turn = position._turn;
+        _winner = EMPTY;
+        _whiteLo = bits[0];
+        _whiteHi = bits[1];
+        _blackLo = bits[2];
+        _blackHi = bits[3];
+        _spearLo = bits[4];
+        _spearHi = bits[5];
+        _key = bits[6];
+        totalmoves = position._history.length;
+        System.arraycopy(position._history, 0, _history, 0, totalmoves);
+    }
+
+    /** Return a snapshot of my current position and history. */
+    Position snapshot() {
+        return new Position(this);
+    }
+
+    /** An immutable snapshot of a Board: its contents, side to move, and
+     *  history of moves, as flat primitive arrays.  Being immutable, a
+     *  Position may be shared by any number of threads without copying
+     *  or locking; each makes a Board from it to search. */
+    static final class Position {
+
+        /** A snapshot of BOARD. */
+        private Position(Board board) {
+            _bits = new long[] {
+                board._whiteLo, board._whiteHi, board._blackLo,
+                board._blackHi, board._spearLo, board._spearHi, board._key
+            };
+            _turn = board._turn;
+            _history = Arrays.copyOf(board._history, board.totalmoves);
+        }
+
+        /** Return the side to move. */
+        Piece turn() {
+            return _turn;
         }
-        this.queenposw.clear();
-        for (int i = 0; i < model.queenposw.size(); i += 1) {
-            this.queenposw.add(board[model.queenposw.get(i).row()]
-                    [model.queenposw.get(i).col()]);
+
+        /** Return the number of moves made to reach me. */
+        int numMoves() {
+            return _history.length;
         }
-        this.allMoves.clear();
-        for (int i = 0; i < model.allMoves.size(); i += 1) {
-            Square f = model.allMoves.get(i).from();
-            Square t = model.allMoves.get(i).to();
-            Square s = model.allMoves.get(i).spear();
-            this.allMoves.add(Move.mv(f, t, s));
+
+        /** Return the hash key (see Board.key) of my position. */
+        long key() {
+            return _bits[6];
         }
+
+        /** The occupancy masks of the Board (White, Black, and spears,
+         *  each low word then high), followed by its key. */
+        private final long[] _bits;
+        /** The side to move. */
+        private final Piece _turn;
+        /** Codes of the moves made. */
+        private final int[] _history;
     }
 
     /** Clears the board to the initial position. */
     void init() {
         _turn = WHITE;
         _winner = EMPTY;
-        board = new Square[SIZE][SIZE];
-        for (int i = 0; i < board.length; i += 1) {
-            for (int j = 0; j < board[0].length; j += 1) {
-                int index = i * 10 + j;
-                Square addsquare = new Square(index);
-                addsquare.setBoard(board);
-                board[i][j] = addsquare;
-                Square.SQUARES[index] = addsquare;
-            }
-        }
-        queenposw = new ArrayList<>();
+        _whiteLo = _whiteHi = 0;
+        _blackLo = _blackHi = 0;
+        _spearLo = _spearHi = 0;
+        _key = 0;
         for (int i = 0; i < STARTPOSW.length; i += 1) {
-            board[STARTPOSW[i][1]][STARTPOSW[i][0]].setPiece(Piece.WHITE);
-            queenposw.add(board[STARTPOSW[i][1]][STARTPOSW[i][0]]);
+            set(STARTPOSW[i][1] * SIZE + STARTPOSW[i][0], WHITE);
         }
-        queenposb = new ArrayList<>();
         for (int j = 0; j < STARTPOSB.length; j += 1) {
-            board[STARTPOSB[j][1]][STARTPOSB[j][0]].setPiece(Piece.BLACK);
-            queenposb.add(board[STARTPOSB[j][1]][STARTPOSB[j][0]]);
+            set(STARTPOSB[j][1] * SIZE + STARTPOSB[j][0], BLACK);
         }
         totalmoves = 0;
     }
@@ -110,11 +191,16 @@ class Board {
         return totalmoves;
     }
 
+    /** Return the codes (see Move.code) of the moves that have not been
+     *  undone, in the order made. */
+    int[] history() {
+        return Arrays.copyOf(_history, totalmoves);
+    }
+
     /** Return the winner in the current position, or null if the game is
      *  not yet finished. */
     Piece winner() {
-        Iterator check = legalMoves(_turn);
-        if (!check.hasNext()) {
+        if (!hasMove(_turn)) {
             if (_turn == WHITE) {
                 _winner = BLACK;
             } else {
@@ -126,15 +212,22 @@ class Board {
         return _winner;
     }
 
+    /** Return a 64-bit Zobrist hash of the current position: the square
+     *  contents and the side to move.  Equal positions reached by
+     *  different move orders have equal keys. */
+    long key() {
+        return _key;
+    }
+
     /** Return the contents the square at S. */
     final Piece get(Square s) {
-        return s.getPiece();
+        return get(s.index());
     }
 
     /** Return the contents of the square at (COL, ROW), where
      *  0 <= COL, ROW <= 9. */
     final Piece get(int col, int row) {
-        return Square.sq(col, row).getPiece();
+        return get(row * SIZE + col);
     }
 
     /** Return the contents of the square at COL ROW. */
@@ -142,14 +235,39 @@ class Board {
         return get(col - 'a', row - '1');
     }
 
+    /** Return the contents of the square with index INDEX. */
+    private Piece get(int index) {
+        if (index < 64) {
+            long bit = 1L << index;
+            if ((_whiteLo & bit) != 0) {
+                return WHITE;
+            } else if ((_blackLo & bit) != 0) {
+                return BLACK;
+            } else if ((_spearLo & bit) != 0) {
+                return SPEAR;
+            }
+        } else {
+            long bit = 1L << (index - 64);
+            if ((_whiteHi & bit) != 0) {
+                return WHITE;
+            } else if ((_blackHi & bit) != 0) {
+                return BLACK;
+            } else if ((_spearHi & bit) != 0) {
+                return SPEAR;
+            }
+        }
+        return EMPTY;
+    }
+
     /** Set square S to P. */
     final void put(Piece p, Square s) {
-        s.setPiece(p);
+        set(s.index(), p);
+        _winner = EMPTY;
     }
 
     /** Set square (COL, ROW) to P. */
     final void put(Piece p, int col, int row) {
-        board[row][col].setPiece(p);
+        set(row * SIZE + col, p);
         _winner = EMPTY;
     }
 
@@ -158,87 +276,90 @@ class Board {
         put(p, col - 'a', row - '1');
     }
 
+    /** Set the square with index INDEX to P in the occupancy masks,
+     *  updating the hash key. */
+    private void set(int index, Piece p) {
+        Piece old = get(index);
+        if (old != EMPTY) {
+            _key ^= ZOBRIST[old.ordinal()][index];
+        }
+        if (p != EMPTY) {
+            _key ^= ZOBRIST[p.ordinal()][index];
+        }
+        if (index < 64) {
+            long bit = 1L << index;
+            _whiteLo &= ~bit;
+            _blackLo &= ~bit;
+            _spearLo &= ~bit;
+            switch (p) {
+            case WHITE:
+                _whiteLo |= bit;
+                break;
+            case BLACK:
+                _blackLo |= bit;
+                break;
+            case SPEAR:
+                _spearLo |= bit;
+                break;
+            default:
+                break;
+            }
+        } else {
+            long bit = 1L << (index - 64);
+            _whiteHi &= ~bit;
+            _blackHi &= ~bit;
+            _spearHi &= ~bit;
+            switch (p) {
+            case WHITE:
+                _whiteHi |= bit;
+                break;
+            case BLACK:
+                _blackHi |= bit;
+                break;
+            case SPEAR:
+                _spearHi |= bit;
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    /** Return the occupied squares 0-63. */
+    private long occLo() {
+        return _whiteLo | _blackLo | _spearLo;
+    }
+
+    /** Return the occupied squares 64-99. */
+    private long occHi() {
+        return _whiteHi | _blackHi | _spearHi;
+    }
+
     /** Return true iff FROM - TO is an unblocked queen move on the current
      *  board, ignoring the contents of ASEMPTY, if it is encountered.
      *  For this to be true, FROM-TO must be a queen move and the
      *  squares along it, other than FROM and ASEMPTY, must be
      *  empty. ASEMPTY may be null, in which case it has no effect. */
     boolean isUnblockedMove(Square from, Square to, Square asEmpty) {
-        int[] dir = Square.DIR[0];
-        try {
-            if (asEmpty != null) {
-                dir = Square.DIR[from.directionAsEmpty(to, asEmpty)];
-            } else {
-                dir = Square.DIR[from.direction(to)];
-            }
-        } catch (ArrayIndexOutOfBoundsException a) {
-            return false;
-        }
-        int checkcol = from.col() + dir[0];
-        int checkrow = from.row() + dir[1];
-        Piece checkp;
-        while (checkcol != to.col() || checkrow != to.row()) {
-            checkp = board[checkrow][checkcol].getPiece();
-            if (asEmpty != null) {
-                if (checkp != Piece.EMPTY) {
-                    if (checkcol != asEmpty.col()
-                            && checkrow != asEmpty.row()) {
-                        return false;
-                    }
-                }
-            } else {
-                if (checkp != Piece.EMPTY) {
-                    return false;
-                }
-            }
-            checkcol += dir[0];
-            checkrow += dir[1];
-        }
-        checkp = board[checkrow][checkcol].getPiece();
+        long occLo = occLo(), occHi = occHi();
         if (asEmpty != null) {
-            if (checkp != Piece.EMPTY) {
-                if (checkcol != asEmpty.col() && checkrow != asEmpty.row()) {
-                    return false;
-                }
-            }
-        } else {
-            if (checkp != Piece.EMPTY) {
-                return false;
-            }
+            occLo &= ~lo(asEmpty.index());
+            occHi &= ~hi(asEmpty.index());
         }
-        return true;
+        reach(from.index(), occLo, occHi, _reach);
+        return contains(_reach[0], _reach[1], to.index());
     }
 
     /** Return true iff FROM is a valid starting square for a move. */
     boolean isLegal(Square from) {
-        return from.getPiece() == Piece.BLACK || from.getPiece() == Piece.WHITE;
+        Piece p = get(from);
+        return p == Piece.BLACK || p == Piece.WHITE;
     }
 
     /** Return true iff FROM-TO is a valid first part of move, ignoring
      *  spear throwing. */
     boolean isLegal(Square from, Square to) {
-        int[] dir = Square.DIR[0];
-        try {
-            dir = Square.DIR[from.direction(to)];
-        } catch (ArrayIndexOutOfBoundsException a) {
-            return false;
-        }
-        int checkcol = from.col() + dir[0];
-        int checkrow = from.row() + dir[1];
-        Piece checkp;
-        while (checkcol != to.col() || checkrow != to.row()) {
-            checkp = board[checkrow][checkcol].getPiece();
-            if (checkp != Piece.EMPTY) {
-                return false;
-            }
-            checkcol += dir[0];
-            checkrow += dir[1];
-        }
-        checkp = board[checkrow][checkcol].getPiece();
-        if (checkp != Piece.EMPTY) {
-            return false;
-        }
-        return true;
+        return isUnblockedMove(from, to, null);
     }
 
     /** Return true iff FROM-TO(SPEAR) is a legal move in the current
@@ -251,13 +372,24 @@ class Board {
     /** Return true iff MOVE is a legal move in the current
      *  position. */
     boolean isLegal(Move move) {
-        if (!isLegal(move.from(), move.to())) {
+        return isLegal(move.code());
+    }
+
+    /** Return true iff the move with code MOVE is a legal move in the
+     *  current position. */
+    boolean isLegal(int move) {
+        int from = Move.from(move), to = Move.to(move);
+        Piece p = get(from);
+        if (p != WHITE && p != BLACK) {
             return false;
         }
-        if (!isLegal(move.to(), move.spear())) {
+        long occLo = occLo(), occHi = occHi();
+        reach(from, occLo, occHi, _reach);
+        if (!contains(_reach[0], _reach[1], to)) {
             return false;
         }
-        return true;
+        reach(to, occLo & ~lo(from), occHi & ~hi(from), _reach);
+        return contains(_reach[0], _reach[1], Move.spear(move));
     }
 
     /** Move FROM-TO(SPEAR), assuming this is a legal move. */
@@ -267,80 +399,74 @@ class Board {
 
     /** Move according to MOVE, assuming it is a legal move. */
     void makeMove(Move move) {
-        Square from = board[move.from().row()][move.from().col()];
-        Square to = board[move.to().row()][move.to().col()];
-        Square spear = board[move.spear().row()][move.spear().col()];
-        Piece p = from.getPiece();
-        board[from.row()][from.col()].setPiece(EMPTY);
-        board[to.row()][to.col()].setPiece(p);
-        board[spear.row()][spear.col()].setPiece(SPEAR);
-        Square.SQUARES[from.row() * 10 + from.col()].setPiece(EMPTY);
-        Square.SQUARES[to.row() * 10 + to.col()].setPiece(p);
-        Square.SQUARES[spear.row() * 10 + spear.col()].setPiece(SPEAR);
-        allMoves.push(move);
-        if (p == WHITE) {
-            for (Square s : queenposw) {
-                if (s.row() == from.row() && s.col() == from.col()) {
-                    queenposw.remove(s);
-                    break;
-                }
-            }
-            queenposw.add(board[to.row()][to.col()]);
-        } else {
-            for (Square s : queenposb) {
-                if (s.row() == from.row() && s.col() == from.col()) {
-                    queenposb.remove(s);
-                    break;
-                }
-            }
-            queenposb.add(board[to.row()][to.col()]);
-        }
-        if (_turn == WHITE) {
-            _turn = BLACK;
-        } else {
-            _turn = WHITE;
-        }
+        makeMove(move.code());
+    }
+
+    /** Make the move with code MOVE, assuming it is a legal move. */
+    void makeMove(int move) {
+        int from = Move.from(move), to = Move.to(move);
+        Piece p = get(from);
+        set(from, EMPTY);
+        set(to, p);
+        set(Move.spear(move), SPEAR);
+        _history[totalmoves] = move;
+        _turn = _turn.opponent();
+        _key ^= ZOBRIST_BLACK_TO_MOVE;
         totalmoves += 1;
     }
 
     /** Undo one move.  Has no effect on the initial board. */
     void undo() {
-        if (allMoves.empty()) {
+        if (totalmoves == 0) {
             return;
         }
-        Move prev = allMoves.pop();
-        Square from = board[prev.from().row()][prev.from().col()];
-        Square to = board[prev.to().row()][prev.to().col()];
-        Square spear = board[prev.spear().row()][prev.spear().col()];
-        Piece reset = to.getPiece();
-        board[from.row()][from.col()].setPiece(reset);
-        board[to.row()][to.col()].setPiece(EMPTY);
-        Square.SQUARES[from.row() * 10 + from.col()].setPiece(reset);
-        Square.SQUARES[to.row() * 10 + to.col()].setPiece(EMPTY);
-        if (from.col() != spear.col() && from.row() != spear.col()) {
-            board[spear.row()][spear.col()].setPiece(EMPTY);
-            Square.SQUARES[spear.row() * 10 + spear.col()].setPiece(EMPTY);
-        }
-        if (_turn == WHITE) {
-            for (Square s : queenposb) {
-                if (s.row() == to.row() && s.col() == to.col()) {
-                    queenposb.remove(s);
-                    break;
-                }
-            }
-            queenposb.add(board[from.row()][from.col()]);
-            _turn = BLACK;
-        } else {
-            for (Square s : queenposw) {
-                if (s.row() == to.row() && s.col() == to.col()) {
-                    queenposw.remove(s);
-                    break;
-                }
-            }
-            queenposw.add(board[from.row()][from.col()]);
-            _turn = WHITE;
-        }
+        int prev = _history[totalmoves - 1];
+        int from = Move.from(prev), to = Move.to(prev);
+        Piece reset = get(to);
+        set(Move.spear(prev), EMPTY);
+        set(to, EMPTY);
+        set(from, reset);
+        _turn = _turn.opponent();
+        _key ^= ZOBRIST_BLACK_TO_MOVE;
+        totalmoves -= 1;
+    }
+
+    /** Move the queen on square FROM to square TO, assuming this is an
+     *  unblocked queen move, as the first half of a move whose spear is
+     *  still to be thrown (see throwSpear).  The turn does not change,
+     *  and nothing is recorded in the history, but the key changes so
+     *  that no full position has the same key as the half-made one. */
+    void moveQueen(int from, int to) {
+        set(to, get(from));
+        set(from, EMPTY);
+        _key ^= ZOBRIST_HALF_MOVE;
+    }
+
+    /** Take back the half-made move FROM-TO made by moveQueen. */
+    void unmoveQueen(int from, int to) {
+        set(from, get(to));
+        set(to, EMPTY);
+        _key ^= ZOBRIST_HALF_MOVE;
+    }
+
+    /** Complete the half-made move FROM-TO by throwing the spear to
+     *  SPEAR, giving the same position as makeMove would have for the
+     *  whole move. */
+    void throwSpear(int from, int to, int spear) {
+        set(spear, SPEAR);
+        _history[totalmoves] = Move.code(from, to, spear);
+        _turn = _turn.opponent();
+        _key ^= ZOBRIST_BLACK_TO_MOVE ^ ZOBRIST_HALF_MOVE;
+        totalmoves += 1;
+    }
+
+    /** Take back the spear of the last move, made by throwSpear, leaving
+     *  the move half made. */
+    void unthrowSpear() {
         totalmoves -= 1;
+        set(Move.spear(_history[totalmoves]), EMPTY);
+        _turn = _turn.opponent();
+        _key ^= ZOBRIST_BLACK_TO_MOVE ^ ZOBRIST_HALF_MOVE;
     }
 
     /** Return an Iterator over the Squares that are reachable by an
@@ -365,254 +491,682 @@ class Board {
         return new LegalMoveIterator(side);
     }
 
-    /** An iterator used by reachableFrom. */
-    private class ReachableFromIterator implements Iterator<Square> {
+    /** Store the codes of all legal moves for SIDE (regardless of whose
+     *  turn it is) in MOVES, which must have room for MAX_MOVES, and
+     *  return their number.  The moves are in the same order as
+     *  legalMoves(SIDE) produces them. */
+    int generateMoves(Piece side, int[] moves) {
+        return generateMoves(side, moves, 0, 0);
+    }
 
-        /** Iterator of all squares reachable by queen move from FROM,
-         *  treating ASEMPTY as empty. */
-        ReachableFromIterator(Square from, Square asEmpty) {
-            _from = from;
-            _dir = 0;
-            _steps = 1;
-            _asEmpty = asEmpty;
-        }
+    /** As for generateMoves(SIDE, MOVES), but omitting moves of queens on
+     *  the squares in the mask SKIPLO, SKIPHI. */
+    int generateMoves(Piece side, int[] moves, long skipLo, long skipHi) {
+        return generateMoves(side, moves, skipLo, skipHi, 0);
+    }
 
-        @Override
-        public boolean hasNext() {
-            return _dir < 8 && checkN();
-        }
-
-        /** Advance dir.
-         * @return boolean if has dir. */
-        private boolean checkN() {
-            int[] dir = Square.DIR[_dir];
-            int nextc = _from.col() + (_steps * dir[0]);
-            int nextr = _from.row() + (_steps * dir[1]);
-            boolean chk1 = nextc >= 0 && nextc < SIZE;
-            boolean chk2 = nextr >= 0 && nextr < SIZE, chk4 = true;
-            if (chk1 && chk2) {
-                chk4 = board[nextr][nextc].getPiece() == Piece.EMPTY;
-                if (_asEmpty != null) {
-                    boolean chk3 =
-                            board[nextr][nextc].getPiece() == Piece.EMPTY;
-                    chk4 = chk3 || (nextc == _asEmpty.col()
-                            && nextr == _asEmpty.row());
+    /** As for generateMoves(SIDE, MOVES, SKIPLO, SKIPHI), but keeping
+     *  only the ARROWS most promising spears of each queen move, if it
+     *  has more (all of them if ARROWS is 0).  The most promising are
+     *  the squares nearest the opponent's queens, counting king moves
+     *  over empty squares, and among squares at the same distance,
+     *  those an opponent queen can reach now.  Squares no opponent
+     *  queen can get to, such as those deep in SIDE's own territory,
+     *  come last.  The moves kept are in generation order. */
+    int generateMoves(Piece side, int[] moves, long skipLo, long skipHi,
+                      int arrows) {
+        if (arrows > 0) {
+            if (_ranks == null) {
+                _ranks = new long[SPEAR_RANK_WORDS];
+            }
+            rankSpears(side, _ranks);
+        }
+        long occLo = occLo(), occHi = occHi();
+        long qlo = (side == WHITE ? _whiteLo : _blackLo) & ~skipLo,
+            qhi = (side == WHITE ? _whiteHi : _blackHi) & ~skipHi;
+        int n = 0;
+        while ((qlo | qhi) != 0) {
+            int from;
+            if (qlo != 0) {
+                from = Long.numberOfTrailingZeros(qlo);
+                qlo &= qlo - 1;
+            } else {
+                from = 64 + Long.numberOfTrailingZeros(qhi);
+                qhi &= qhi - 1;
+            }
+            long spearOccLo = occLo & ~lo(from),
+                spearOccHi = occHi & ~hi(from);
+            reach(from, occLo, occHi, _reach);
+            long toLo = _reach[0], toHi = _reach[1];
+            while ((toLo | toHi) != 0) {
+                int to;
+                if (toLo != 0) {
+                    to = Long.numberOfTrailingZeros(toLo);
+                    toLo &= toLo - 1;
+                } else {
+                    to = 64 + Long.numberOfTrailingZeros(toHi);
+                    toHi &= toHi - 1;
                 }
+                reach(to, spearOccLo, spearOccHi, _reach);
+                n = addSpears(Move.code(from, to, 0), _reach[0], _reach[1],
+                              arrows, _ranks, moves, n);
             }
-            if (!chk1 || !chk2 || !chk4) {
-                _dir += 1;
-                _steps = 1;
-                if (_dir > 7) {
-                    return false;
+        }
+        return n;
+    }
+
+    /** Store the queen moves of SIDE (regardless of whose turn it is),
+     *  other than those of queens on the squares in the mask SKIPLO,
+     *  SKIPHI, in MOVES as the codes of moves whose spear square is 0,
+     *  and return their number.  MOVES must have room for
+     *  MAX_QUEEN_MOVES. */
+    int generateQueenMoves(Piece side, int[] moves, long skipLo,
+                           long skipHi) {
+        long occLo = occLo(), occHi = occHi();
+        long qlo = (side == WHITE ? _whiteLo : _blackLo) & ~skipLo,
+            qhi = (side == WHITE ? _whiteHi : _blackHi) & ~skipHi;
+        int n = 0;
+        while ((qlo | qhi) != 0) {
+            int from;
+            if (qlo != 0) {
+                from = Long.numberOfTrailingZeros(qlo);
+                qlo &= qlo - 1;
+            } else {
+                from = 64 + Long.numberOfTrailingZeros(qhi);
+                qhi &= qhi - 1;
+            }
+            reach(from, occLo, occHi, _reach);
+            long toLo = _reach[0], toHi = _reach[1];
+            while (toLo != 0) {
+                moves[n] = Move.code(from, Long.numberOfTrailingZeros(toLo),
+                                     0);
+                toLo &= toLo - 1;
+                n += 1;
+            }
+            while (toHi != 0) {
+                moves[n] = Move.code(from,
+                                     64 + Long.numberOfTrailingZeros(toHi),
+                                     0);
+                toHi &= toHi - 1;
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** Store in MOVES the codes of the whole moves that complete the
+     *  half-made move FROM-TO (see moveQueen), one per square its spear
+     *  can reach, and return their number. */
+    int generateSpears(int from, int to, int[] moves) {
+        return generateSpears(from, to, moves, 0, null);
+    }
+
+    /** As for generateSpears(FROM, TO, MOVES), but keeping only the
+     *  ARROWS most promising spears, as generateMoves does (all of them
+     *  if ARROWS is 0), by RANKS, the ranks found by rankSpears in the
+     *  position before FROM-TO.  RANKS is not used if ARROWS is 0. */
+    int generateSpears(int from, int to, int[] moves, int arrows,
+                       long[] ranks) {
+        reach(to, occLo(), occHi(), _reach);
+        return addSpears(Move.code(from, to, 0), _reach[0], _reach[1],
+                         arrows, ranks, moves, 0);
+    }
+
+    /** Store in MOVES[N], MOVES[N + 1], ... the codes of the moves whose
+     *  queen move is that of code BASE and whose spears go to the
+     *  squares in the mask SPLO, SPHI, or only to the ARROWS best ranked
+     *  of those by RANKS (see rankSpears), if ARROWS is positive and
+     *  there are more.  Return the index after the last code stored. */
+    private int addSpears(int base, long spLo, long spHi, int arrows,
+                          long[] ranks, int[] moves, int n) {
+        if (arrows > 0 && Long.bitCount(spLo) + Long.bitCount(spHi) > arrows) {
+            long keepLo = 0, keepHi = 0;
+            int left = arrows;
+            for (int r = 0; left > 0; r += 1) {
+                long lo = spLo & ranks[2 * r], hi = spHi & ranks[2 * r + 1];
+                int count = Long.bitCount(lo) + Long.bitCount(hi);
+                if (count <= left) {
+                    keepLo |= lo;
+                    keepHi |= hi;
+                    left -= count;
+                    continue;
                 }
-                dir = Square.DIR[_dir];
-                nextc = _from.col() + (_steps * dir[0]);
-                nextr = _from.row() + (_steps * dir[1]);
-                boolean chk = nextc >= 0 && nextc < SIZE
-                        && nextr >= 0 && nextr < SIZE;
-                boolean chk6 = true;
-                if (chk) {
-                    chk6 = board[nextr][nextc].getPiece() != Piece.EMPTY;
-                    if (_asEmpty != null) {
-                        boolean chk5 = nextc != _asEmpty.col()
-                                || nextr != _asEmpty.row();
-                        chk6 = chk5 && board[nextr][nextc].getPiece()
-                                != Piece.EMPTY;
-                    }
+                for (; left > 0 && lo != 0; left -= 1) {
+                    keepLo |= lo & -lo;
+                    lo &= lo - 1;
                 }
-                while (!chk || chk6) {
-                    _dir += 1;
-                    if (_dir > 7) {
-                        return false;
-                    }
-                    dir = Square.DIR[_dir];
-                    nextc = _from.col() + (_steps * dir[0]);
-                    nextr = _from.row() + (_steps * dir[1]);
-                    chk = nextc >= 0 && nextc < SIZE
-                            && nextr >= 0 && nextr < SIZE;
-                    if (chk) {
-                        chk6 = board[nextr][nextc].getPiece()
-                                != Piece.EMPTY;
-                        if (_asEmpty != null) {
-                            boolean chk5 = nextc != _asEmpty.col()
-                                    || nextr != _asEmpty.row();
-                            chk6 = chk5 && board[nextr][nextc].getPiece()
-                                    != Piece.EMPTY;
-                        }
-                    }
+                for (; left > 0 && hi != 0; left -= 1) {
+                    keepHi |= hi & -hi;
+                    hi &= hi - 1;
                 }
             }
-            return true;
+            spLo = keepLo;
+            spHi = keepHi;
         }
+        while (spLo != 0) {
+            moves[n] = base | Long.numberOfTrailingZeros(spLo) << 14;
+            spLo &= spLo - 1;
+            n += 1;
+        }
+        while (spHi != 0) {
+            moves[n] = base | (64 + Long.numberOfTrailingZeros(spHi)) << 14;
+            spHi &= spHi - 1;
+            n += 1;
+        }
+        return n;
+    }
 
-        @Override
-        public Square next() {
-            int[] dir = Square.DIR[_dir];
-            int nextc = _from.col() + (_steps * dir[0]);
-            int nextr = _from.row() + (_steps * dir[1]);
-            toNext();
-            return board[nextr][nextc];
+    /** Fill RANKS, which must have SPEAR_RANK_WORDS elements, with the
+     *  ranks of the squares as targets for SIDE's spears (see
+     *  generateMoves): RANKS[2r] and RANKS[2r + 1] are the LO and HI
+     *  words of the squares of rank r.  Rank 2(d - 1) holds the squares
+     *  at king distance d over empty squares from the opponent's queens
+     *  that one of those queens can reach now, and rank 2(d - 1) + 1 the
+     *  rest at that distance, where distances over SIZE count as SIZE.
+     *  The last rank holds the squares the opponent cannot get to,
+     *  including occupied ones.  This costs one breadth-first search, so
+     *  a search ranks the squares once per position and uses the ranks
+     *  for every queen move from it (see generateSpears). */
+    void rankSpears(Piece side, long[] ranks) {
+        Arrays.fill(ranks, 0);
+        long occLo = occLo(), occHi = occHi();
+        long qlo = side == WHITE ? _blackLo : _whiteLo,
+            qhi = side == WHITE ? _blackHi : _whiteHi;
+        long reachLo = 0, reachHi = 0;
+        for (long lo = qlo, hi = qhi; (lo | hi) != 0; ) {
+            int q;
+            if (lo != 0) {
+                q = Long.numberOfTrailingZeros(lo);
+                lo &= lo - 1;
+            } else {
+                q = 64 + Long.numberOfTrailingZeros(hi);
+                hi &= hi - 1;
+            }
+            reach(q, occLo, occHi, _reach);
+            reachLo |= _reach[0];
+            reachHi |= _reach[1];
+        }
+        long seenLo = occLo, seenHi = occHi;
+        long frontLo = qlo, frontHi = qhi;
+        for (int d = 1; (frontLo | frontHi) != 0; d += 1) {
+            long nextLo = 0, nextHi = 0;
+            while (frontLo != 0) {
+                int k = Long.numberOfTrailingZeros(frontLo);
+                nextLo |= KING_LO[k];
+                nextHi |= KING_HI[k];
+                frontLo &= frontLo - 1;
+            }
+            while (frontHi != 0) {
+                int k = 64 + Long.numberOfTrailingZeros(frontHi);
+                nextLo |= KING_LO[k];
+                nextHi |= KING_HI[k];
+                frontHi &= frontHi - 1;
+            }
+            nextLo &= ~seenLo;
+            nextHi &= ~seenHi;
+            seenLo |= nextLo;
+            seenHi |= nextHi;
+            frontLo = nextLo;
+            frontHi = nextHi;
+            int w = 4 * (Math.min(d, SIZE) - 1);
+            ranks[w] |= nextLo & reachLo;
+            ranks[w + 1] |= nextHi & reachHi;
+            ranks[w + 2] |= nextLo & ~reachLo;
+            ranks[w + 3] |= nextHi & ~reachHi;
         }
+        ranks[SPEAR_RANK_WORDS - 2] = ~(seenLo & ~occLo);
+        ranks[SPEAR_RANK_WORDS - 1] = ~(seenHi & ~occHi) & HI_SQUARES;
+    }
 
-        /** Advance _dir and _steps, so that the next valid Square is
-         *  _steps steps in direction _dir from _from. */
-        private void toNext() {
-            int[] dir = Square.DIR[_dir];
-            int nextc = _from.col() + ((_steps + 1) * dir[0]);
-            int nextr = _from.row() + ((_steps + 1) * dir[1]);
-            boolean chk = nextc >= 0 && nextc < SIZE
-                    && nextr >= 0 && nextr < SIZE, chkk = true;
-            if (chk) {
-                if (_asEmpty == null) {
-                    chkk = board[nextr][nextc].getPiece() == Piece.EMPTY;
+    /** Return the number of squares reachable by queen moves from all of
+     *  SIDE's queens, counting a square once per queen that reaches it. */
+    int mobility(Piece side) {
+        long occLo = occLo(), occHi = occHi();
+        long qlo = side == WHITE ? _whiteLo : _blackLo,
+            qhi = side == WHITE ? _whiteHi : _blackHi;
+        int total = 0;
+        while (qlo != 0) {
+            reach(Long.numberOfTrailingZeros(qlo), occLo, occHi, _reach);
+            total += Long.bitCount(_reach[0]) + Long.bitCount(_reach[1]);
+            qlo &= qlo - 1;
+        }
+        while (qhi != 0) {
+            reach(64 + Long.numberOfTrailingZeros(qhi), occLo, occHi, _reach);
+            total += Long.bitCount(_reach[0]) + Long.bitCount(_reach[1]);
+            qhi &= qhi - 1;
+        }
+        return total;
+    }
+
+    /** Return the number of legal moves SIDE has (regardless of whose
+     *  turn it is), counted from reach masks rather than generated: a
+     *  queen at Q moving to T can throw its spear to any square T
+     *  reaches once Q is empty. */
+    int legalMoveCount(Piece side) {
+        long occLo = occLo(), occHi = occHi();
+        long qlo = side == WHITE ? _whiteLo : _blackLo,
+            qhi = side == WHITE ? _whiteHi : _blackHi;
+        int total = 0;
+        while ((qlo | qhi) != 0) {
+            int q;
+            if (qlo != 0) {
+                q = Long.numberOfTrailingZeros(qlo);
+                qlo &= qlo - 1;
+            } else {
+                q = 64 + Long.numberOfTrailingZeros(qhi);
+                qhi &= qhi - 1;
+            }
+            reach(q, occLo, occHi, _reach);
+            long toLo = _reach[0], toHi = _reach[1];
+            long restLo = occLo & ~lo(q), restHi = occHi & ~hi(q);
+            while ((toLo | toHi) != 0) {
+                int t;
+                if (toLo != 0) {
+                    t = Long.numberOfTrailingZeros(toLo);
+                    toLo &= toLo - 1;
                 } else {
-                    chkk = board[nextr][nextc].getPiece() == Piece.EMPTY
-                            || (nextc == _asEmpty.col()
-                            && nextr == _asEmpty.row());
+                    t = 64 + Long.numberOfTrailingZeros(toHi);
+                    toHi &= toHi - 1;
                 }
+                reach(t, restLo, restHi, _reach);
+                total += Long.bitCount(_reach[0]) + Long.bitCount(_reach[1]);
             }
-            if (chk && chkk) {
-                _steps += 1;
+        }
+        return total;
+    }
+
+    /** Return true iff SIDE has at least one legal move.  A queen that can
+     *  move at all can always throw its spear back where it came from, so
+     *  this only needs to find one unblocked queen. */
+    private boolean hasMove(Piece side) {
+        long occLo = occLo(), occHi = occHi();
+        long qlo = side == WHITE ? _whiteLo : _blackLo,
+            qhi = side == WHITE ? _whiteHi : _blackHi;
+        while ((qlo | qhi) != 0) {
+            int q;
+            if (qlo != 0) {
+                q = Long.numberOfTrailingZeros(qlo);
+                qlo &= qlo - 1;
             } else {
-                _dir += 1;
-                _steps = 1;
-                if (_dir > 7) {
-                    return;
+                q = 64 + Long.numberOfTrailingZeros(qhi);
+                qhi &= qhi - 1;
+            }
+            reach(q, occLo, occHi, _reach);
+            if ((_reach[0] | _reach[1]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Store in DIST[k], for each square k, the least number of queen
+     *  moves in which one of SIDE's queens could reach k over empty
+     *  squares if it could move repeatedly, or UNREACHABLE if none can
+     *  (as for occupied squares).  DIST must have SIZE * SIZE
+     *  elements. */
+    void queenDistances(Piece side, int[] dist) {
+        distances(side, true, dist);
+    }
+
+    /** As for queenDistances, but for king moves: one step in any of the
+     *  eight directions.  Stores in DIST. */
+    void kingDistances(Piece side, int[] dist) {
+        distances(side, false, dist);
+    }
+
+    /** Fill DIST with the distances from SIDE's queens by a breadth-first
+     *  search from all of them at once, taking queen moves iff QUEEN and
+     *  otherwise king moves.  Each frontier is a bit mask, expanded by
+     *  the union of the moves from each of its squares. */
+    private void distances(Piece side, boolean queen, int[] dist) {
+        Arrays.fill(dist, UNREACHABLE);
+        long occLo = occLo(), occHi = occHi();
+        long seenLo = occLo, seenHi = occHi;
+        long frontLo = side == WHITE ? _whiteLo : _blackLo,
+            frontHi = side == WHITE ? _whiteHi : _blackHi;
+        for (int d = 1; (frontLo | frontHi) != 0; d += 1) {
+            long nextLo = 0, nextHi = 0;
+            while ((frontLo | frontHi) != 0) {
+                int k;
+                if (frontLo != 0) {
+                    k = Long.numberOfTrailingZeros(frontLo);
+                    frontLo &= frontLo - 1;
+                } else {
+                    k = 64 + Long.numberOfTrailingZeros(frontHi);
+                    frontHi &= frontHi - 1;
                 }
-                dir = Square.DIR[_dir];
-                nextc = _from.col() + (_steps * dir[0]);
-                nextr = _from.row() + (_steps * dir[1]);
-                chk = nextc >= 0 && nextc < SIZE && nextr >= 0 && nextr < SIZE;
-                boolean chkkk = true;
-                if (chk) {
-                    if (_asEmpty == null) {
-                        chkkk = board[nextr][nextc].getPiece() != Piece.EMPTY;
-                    } else {
-                        chkkk = board[nextr][nextc].getPiece() != Piece.EMPTY
-                                && (nextc != _asEmpty.col()
-                                && nextr != _asEmpty.row());
-                    }
+                if (queen) {
+                    reach(k, occLo, occHi, _reach);
+                    nextLo |= _reach[0];
+                    nextHi |= _reach[1];
+                } else {
+                    nextLo |= KING_LO[k];
+                    nextHi |= KING_HI[k];
                 }
-                while (!chk || chkkk) {
-                    _dir += 1;
-                    if (_dir > 7) {
-                        break;
-                    }
-                    dir = Square.DIR[_dir];
-                    nextc = _from.col() + (_steps * dir[0]);
-                    nextr = _from.row() + (_steps * dir[1]);
-                    chk = nextc >= 0 && nextc < SIZE
-                            && nextr >= 0 && nextr < SIZE;
-                    if (chk) {
-                        if (_asEmpty == null) {
-                            chkkk = board[nextr][nextc].getPiece()
-                                    != Piece.EMPTY;
-                        } else {
-                            chkkk = board[nextr][nextc].getPiece()
-                                    != Piece.EMPTY && (nextc != _asEmpty.col()
-                                    && nextr != _asEmpty.row());
-                        }
-                    }
+            }
+            nextLo &= ~seenLo;
+            nextHi &= ~seenHi;
+            seenLo |= nextLo;
+            seenHi |= nextHi;
+            frontLo = nextLo;
+            frontHi = nextHi;
+            while (nextLo != 0) {
+                dist[Long.numberOfTrailingZeros(nextLo)] = d;
+                nextLo &= nextLo - 1;
+            }
+            while (nextHi != 0) {
+                dist[64 + Long.numberOfTrailingZeros(nextHi)] = d;
+                nextHi &= nextHi - 1;
+            }
+        }
+    }
+
+    /** Return the regions of the board: the sets of squares without
+     *  spears that are connected by king moves.  No queen move or spear
+     *  throw can leave a region, so play in one region has no effect
+     *  on any other. */
+    List<Region> regions() {
+        long freeLo = ~_spearLo, freeHi = ~_spearHi & HI_SQUARES;
+        List<Region> result = new ArrayList<>();
+        while ((freeLo | freeHi) != 0) {
+            long regionLo, regionHi;
+            if (freeLo != 0) {
+                regionLo = Long.lowestOneBit(freeLo);
+                regionHi = 0;
+            } else {
+                regionLo = 0;
+                regionHi = Long.lowestOneBit(freeHi);
+            }
+            long frontLo = regionLo, frontHi = regionHi;
+            while ((frontLo | frontHi) != 0) {
+                long nextLo = 0, nextHi = 0;
+                while (frontLo != 0) {
+                    int k = Long.numberOfTrailingZeros(frontLo);
+                    nextLo |= KING_LO[k];
+                    nextHi |= KING_HI[k];
+                    frontLo &= frontLo - 1;
+                }
+                while (frontHi != 0) {
+                    int k = 64 + Long.numberOfTrailingZeros(frontHi);
+                    nextLo |= KING_LO[k];
+                    nextHi |= KING_HI[k];
+                    frontHi &= frontHi - 1;
                 }
+                frontLo = nextLo & freeLo & ~regionLo;
+                frontHi = nextHi & freeHi & ~regionHi;
+                regionLo |= frontLo;
+                regionHi |= frontHi;
             }
+            freeLo &= ~regionLo;
+            freeHi &= ~regionHi;
+            result.add(new Region(regionLo, regionHi,
+                                  Long.bitCount(_whiteLo & regionLo)
+                                  + Long.bitCount(_whiteHi & regionHi),
+                                  Long.bitCount(_blackLo & regionLo)
+                                  + Long.bitCount(_blackHi & regionHi)));
         }
+        return result;
+    }
 
-        /** Starting square. */
-        private Square _from;
-        /** Current direction. */
-        private int _dir;
-        /** Current distance. */
-        private int _steps;
-        /** Square treated as empty. */
-        private Square _asEmpty;
+    /** Return the indices of SIDE's queens, in increasing order. */
+    private int[] queens(Piece side) {
+        long qlo, qhi;
+        if (side == WHITE) {
+            qlo = _whiteLo;
+            qhi = _whiteHi;
+        } else {
+            qlo = _blackLo;
+            qhi = _blackHi;
+        }
+        int[] result = new int[Long.bitCount(qlo) + Long.bitCount(qhi)];
+        int k = 0;
+        while (qlo != 0) {
+            result[k] = Long.numberOfTrailingZeros(qlo);
+            qlo &= qlo - 1;
+            k += 1;
+        }
+        while (qhi != 0) {
+            result[k] = 64 + Long.numberOfTrailingZeros(qhi);
+            qhi &= qhi - 1;
+            k += 1;
+        }
+        return result;
     }
 
-    /** An iterator used by legalMoves. */
-    private class LegalMoveIterator implements Iterator<Move> {
+    /** Return the LO-word bit for square INDEX (0 if INDEX >= 64). */
+    private static long lo(int index) {
+        return index < 64 ? 1L << index : 0;
+    }
 
-        /** All legal moves for SIDE (WHITE or BLACK). */
-        LegalMoveIterator(Piece side) {
-            if (side == WHITE) {
-                ArrayList<Square> cqueenposw = new ArrayList<>();
-                for (Square s : queenposw) {
-                    cqueenposw.add(s);
+    /** Return the HI-word bit for square INDEX (0 if INDEX < 64). */
+    private static long hi(int index) {
+        return index < 64 ? 0 : 1L << (index - 64);
+    }
+
+    /** Return true iff square INDEX is in the mask LO, HI. */
+    private static boolean contains(long lo, long hi, int index) {
+        return ((lo & lo(index)) | (hi & hi(index))) != 0;
+    }
+
+    /** Store in OUT[0] and OUT[1] the squares reachable by a queen move
+     *  from FROM, given occupied squares OCCLO and OCCHI.  Each ray is
+     *  cut at its first blocker by removing the blocker and everything
+     *  beyond it, which is just the blocker's own ray in that
+     *  direction. */
+    private static void reach(int from, long occLo, long occHi,
+                              long[] out) {
+        long resultLo = 0, resultHi = 0;
+        for (int dir = 0; dir < 8; dir += 1) {
+            long rayLo = RAY_LO[dir][from], rayHi = RAY_HI[dir][from];
+            int b = blocker(dir, from, occLo, occHi);
+            if (b >= 0) {
+                rayLo &= ~(RAY_LO[dir][b] | lo(b));
+                rayHi &= ~(RAY_HI[dir][b] | hi(b));
+            }
+            resultLo |= rayLo;
+            resultHi |= rayHi;
+        }
+        out[0] = resultLo;
+        out[1] = resultHi;
+    }
+
+    /** Return the first of the occupied squares OCCLO and OCCHI
+     *  beyond FROM in direction DIR, or -1 if there is none. */
+    private static int blocker(int dir, int from, long occLo, long occHi) {
+        long blockLo = RAY_LO[dir][from] & occLo,
+            blockHi = RAY_HI[dir][from] & occHi;
+        if ((blockLo | blockHi) == 0) {
+            return -1;
+        } else if (ASCENDING[dir]) {
+            return blockLo != 0 ? Long.numberOfTrailingZeros(blockLo)
+                : 64 + Long.numberOfTrailingZeros(blockHi);
+        } else {
+            return blockHi != 0 ? 127 - Long.numberOfLeadingZeros(blockHi)
+                : 63 - Long.numberOfLeadingZeros(blockLo);
+        }
+    }
+
+    /** RAY_LO[d][k] and RAY_HI[d][k] are the squares strictly beyond square
+     *  K in direction d (as for Square.DIR), up to the edge of the
+     *  board. */
+    private static final long[][] RAY_LO = new long[8][SIZE * SIZE],
+        RAY_HI = new long[8][SIZE * SIZE];
+
+    /** ASCENDING[d] is true iff stepping in direction d increases the
+     *  square index, so that the nearest square on a ray is its lowest
+     *  bit. */
+    private static final boolean[] ASCENDING = new boolean[8];
+
+    /** The squares of the board in the HI word. */
+    private static final long HI_SQUARES = (1L << (SIZE * SIZE - 64)) - 1;
+
+    /** KING_LO[k] and KING_HI[k] are the squares adjacent to square K. */
+    private static final long[] KING_LO = new long[SIZE * SIZE],
+        KING_HI = new long[SIZE * SIZE];
+
+    static {
+        for (int dir = 0; dir < 8; dir += 1) {
+            int dc = Square.DIR[dir][0], dr = Square.DIR[dir][1];
+            ASCENDING[dir] = dr * SIZE + dc > 0;
+            for (int k = 0; k < SIZE * SIZE; k += 1) {
+                int c = k % SIZE + dc, r = k / SIZE + dr;
+                if (c >= 0 && c < SIZE && r >= 0 && r < SIZE) {
+                    KING_LO[k] |= lo(r * SIZE + c);
+                    KING_HI[k] |= hi(r * SIZE + c);
                 }
-                _startingSquares = cqueenposw.iterator();
-            } else {
-                ArrayList<Square> cqueenposb = new ArrayList<>();
-                for (Square s : queenposb) {
-                    cqueenposb.add(s);
+                while (c >= 0 && c < SIZE && r >= 0 && r < SIZE) {
+                    RAY_LO[dir][k] |= lo(r * SIZE + c);
+                    RAY_HI[dir][k] |= hi(r * SIZE + c);
+                    c += dc;
+                    r += dr;
                 }
-                _startingSquares = cqueenposb.iterator();
             }
-            _spearThrows = NO_SQUARES;
-            _pieceMoves = NO_SQUARES;
-            nextstart();
-            _fromPiece = side;
+        }
+    }
+
+    /** ZOBRIST[p][k] is the hash contribution of Piece p (by ordinal) on
+     *  square k.  The EMPTY row is unused. */
+    private static final long[][] ZOBRIST = new long[4][SIZE * SIZE];
+
+    /** Hash contribution of black being the side to move. */
+    private static final long ZOBRIST_BLACK_TO_MOVE;
+
+    /** Hash contribution of a half-made move (see moveQueen). */
+    private static final long ZOBRIST_HALF_MOVE;
+
+    static {
+        Random keys = new Random(0x5EED_A3A7_0B5L);
+        for (long[] row : ZOBRIST) {
+            for (int k = 0; k < row.length; k += 1) {
+                row[k] = keys.nextLong();
+            }
+        }
+        ZOBRIST_BLACK_TO_MOVE = keys.nextLong();
+        ZOBRIST_HALF_MOVE = keys.nextLong();
+    }
+
+    /** An iterator used by reachableFrom. */
+    private class ReachableFromIterator implements Iterator<Square> {
+
+        /** Iterator of all squares reachable by queen move from FROM,
+         *  treating ASEMPTY as empty. */
+        ReachableFromIterator(Square from, Square asEmpty) {
+            long occLo = occLo(), occHi = occHi();
+            if (asEmpty != null) {
+                occLo &= ~lo(asEmpty.index());
+                occHi &= ~hi(asEmpty.index());
+            }
+            long[] reach = new long[2];
+            reach(from.index(), occLo, occHi, reach);
+            _lo = reach[0];
+            _hi = reach[1];
         }
 
         @Override
         public boolean hasNext() {
-            return _pieceMoves.hasNext() || _startingSquares.hasNext()
-                    || _spearThrows.hasNext();
+            return (_lo | _hi) != 0;
         }
 
         @Override
-        public Move next() {
-            if (!_spearThrows.hasNext()) {
-                nextstart();
-                if (_pieceMoves.hasNext()) {
-                    curmove = _pieceMoves.next();
-                    _spearThrows = new ReachableFromIterator(curmove, _start);
-                }
-                while (!_spearThrows.hasNext()) {
-                    if (!_pieceMoves.hasNext()) {
-                        if (!_startingSquares.hasNext()) {
-                            return null;
-                        }
-                        nextstart();
-                    }
-                    if (!_startingSquares.hasNext() && !_pieceMoves.hasNext()) {
-                        return null;
-                    }
-                    curmove = _pieceMoves.next();
-                    _spearThrows = new ReachableFromIterator(curmove, _start);
-                }
+        public Square next() {
+            int k;
+            if (_lo != 0) {
+                k = Long.numberOfTrailingZeros(_lo);
+                _lo &= _lo - 1;
+            } else if (_hi != 0) {
+                k = 64 + Long.numberOfTrailingZeros(_hi);
+                _hi &= _hi - 1;
+            } else {
+                throw new NoSuchElementException();
             }
-            return Move.mv(_start, curmove, _spearThrows.next());
+            return Square.sq(k);
         }
 
-        /** Next start. */
-        private void nextstart() {
-            while (!_pieceMoves.hasNext()) {
-                if (!_startingSquares.hasNext()) {
-                    return;
-                }
-                _start = _startingSquares.next();
-                _pieceMoves = new ReachableFromIterator(_start, null);
+        /** Remaining reachable squares. */
+        private long _lo, _hi;
+    }
+
+    /** An iterator used by legalMoves. */
+    private class LegalMoveIterator implements Iterator<Move> {
+
+        /** All legal moves for SIDE (WHITE or BLACK). */
+        LegalMoveIterator(Piece side) {
+            _queens = queens(side);
+            _occLo = occLo();
+            _occHi = occHi();
+            _q = -1;
+            toNext();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return _q < _queens.length;
+        }
+
+        @Override
+        public Move next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
             }
+            int spear;
+            if (_spearLo != 0) {
+                spear = Long.numberOfTrailingZeros(_spearLo);
+                _spearLo &= _spearLo - 1;
+            } else {
+                spear = 64 + Long.numberOfTrailingZeros(_spearHi);
+                _spearHi &= _spearHi - 1;
+            }
+            Move result = Move.mv(Move.code(_start, _nextSquare, spear));
+            if ((_spearLo | _spearHi) == 0) {
+                toNext();
+            }
+            return result;
         }
 
         /** Advance so that the next valid Move is
-         *  _start-_nextSquare(sp), where sp is the next value of
-         *  _spearThrows. */
+         *  _start-_nextSquare(sp), where sp is the next spear throw in
+         *  _spearLo, _spearHi.  Sets _q to _queens.length when there are
+         *  no more moves. */
         private void toNext() {
+            while ((_toLo | _toHi) == 0) {
+                _q += 1;
+                if (_q >= _queens.length) {
+                    return;
+                }
+                _start = _queens[_q];
+                reach(_start, _occLo, _occHi, _reach);
+                _toLo = _reach[0];
+                _toHi = _reach[1];
+            }
+            if (_toLo != 0) {
+                _nextSquare = Long.numberOfTrailingZeros(_toLo);
+                _toLo &= _toLo - 1;
+            } else {
+                _nextSquare = 64 + Long.numberOfTrailingZeros(_toHi);
+                _toHi &= _toHi - 1;
+            }
+            reach(_nextSquare, _occLo & ~lo(_start), _occHi & ~hi(_start),
+                  _reach);
+            _spearLo = _reach[0];
+            _spearHi = _reach[1];
         }
 
-        /** Color of side whose moves we are iterating. */
-        private Piece _fromPiece;
+        /** Squares of the queens being moved. */
+        private int[] _queens;
+        /** Index in _queens of the current queen. */
+        private int _q;
+        /** Board occupancy when the iterator was created. */
+        private long _occLo, _occHi;
         /** Current starting square. */
-        private Square _start;
-        /** Remaining starting squares to consider. */
-        private Iterator<Square> _startingSquares;
+        private int _start;
         /** Current piece's new position. */
-        private Square _nextSquare;
-        /** Remaining moves from _start to consider. */
-        private Iterator<Square> _pieceMoves;
-        /** Remaining spear throws from _piece to consider. */
-        private Iterator<Square> _spearThrows;
-        /**Current move. */
-        private Square curmove;
+        private int _nextSquare;
+        /** Remaining destinations for the current queen. */
+        private long _toLo, _toHi;
+        /** Remaining spear throws from _nextSquare. */
+        private long _spearLo, _spearHi;
+        /** Scratch space for reach. */
+        private final long[] _reach = new long[2];
     }
 
     @Override
@@ -621,15 +1175,7 @@ class Board {
         for (int i = SIZE - 1; i >= 0; i -= 1) {
             sboard += "   ";
             for (int j = 0; j < SIZE; j += 1) {
-                if (board[i][j].getPiece() == Piece.WHITE) {
-                    sboard += "W";
-                } else if (board[i][j].getPiece() == Piece.BLACK) {
-                    sboard += "B";
-                } else if (board[i][j].getPiece() == Piece.SPEAR) {
-                    sboard += "S";
-                } else {
-                    sboard += "-";
-                }
+                sboard += get(j, i).toString();
                 sboard += " ";
             }
             sboard = sboard.substring(0, sboard.lastIndexOf(" "));
@@ -638,28 +1184,25 @@ class Board {
         return sboard;
     }
 
-    /**  q.
+    /** Return the squares of the white queens.
      * @return array*/
     ArrayList<Square> getQueenposw() {
-        return queenposw;
-    }
-
-    /** set.
-     * @param a array*/
-    void setQueenposw(ArrayList<Square> a) {
-        queenposw = a;
+        return queenSquares(WHITE);
     }
 
-    /** q.
+    /** Return the squares of the black queens.
      * @return array*/
     ArrayList<Square> getQueenposb() {
-        return queenposb;
+        return queenSquares(BLACK);
     }
 
-    /** set.
-     * @param a array*/
-    void setQueenposb(ArrayList<Square> a) {
-        queenposb = a;
+    /** Return a new list of the squares holding SIDE's queens. */
+    private ArrayList<Square> queenSquares(Piece side) {
+        ArrayList<Square> result = new ArrayList<>();
+        for (int q : queens(side)) {
+            result.add(Square.sq(q));
+        }
+        return result;
     }
 
     /** Get turn.
@@ -674,15 +1217,20 @@ class Board {
         return _winner;
     }
 
-    /** get board.
+    /** Return the squares of the board, indexed by row and column.
      * @return board*/
     Square[][] getBoard() {
-        return board;
+        return SQUARE_GRID;
     }
 
-    /** An empty iterator for initialization. */
-    private static final Iterator<Square> NO_SQUARES =
-        Collections.emptyIterator();
+    /** The Squares, indexed by row and column. */
+    private static final Square[][] SQUARE_GRID = new Square[SIZE][SIZE];
+
+    static {
+        for (int k = 0; k < SIZE * SIZE; k += 1) {
+            SQUARE_GRID[k / SIZE][k % SIZE] = Square.sq(k);
+        }
+    }
 
     /** Piece whose turn it is (BLACK or WHITE). */
     private Piece _turn;
@@ -2,13 +2,21 @@ package amazons;
 
 import org.junit.Test;
 
-import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 
+import static amazons.Piece.BLACK;
 import static amazons.Piece.EMPTY;
 import static amazons.Piece.SPEAR;
 import static amazons.Piece.WHITE;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class BoardTest {
 
@@ -66,13 +74,6 @@ public class BoardTest {
     public void testLegalMoveIterator() {
         Board b1 = new Board();
         makeSmile(b1);
-        b1.setQueenposb(new ArrayList<>());
-        b1.setQueenposw(new ArrayList<>());
-        for (int lip = 3; lip < 7; lip += 1) {
-            b1.getQueenposw().add(b1.getBoard()[2][lip]);
-        }
-        b1.getQueenposw().add(b1.getBoard()[3][2]);
-        b1.getQueenposw().add(b1.getBoard()[3][7]);
         Iterator<Move> m1 = b1.legalMoves(Piece.WHITE);
     }
 
@@ -116,8 +117,214 @@ public class BoardTest {
 
         Square t3 = b1.getBoard()[2][5];
         assertEquals(true, b1.isLegal(q1, t3));
-        b1.getBoard()[3][6].setPiece(Piece.SPEAR);
+        b1.put(Piece.SPEAR, b1.getBoard()[3][6]);
         assertEquals(false, b1.isLegal(q1, t3));
 
     }
+
+    @Test
+    public void testInitialMoveCount() {
+        Board b1 = new Board();
+        int count = 0;
+        Iterator<Move> m1 = b1.legalMoves();
+        while (m1.hasNext()) {
+            Move mv = m1.next();
+            assertEquals(true, b1.isLegal(mv));
+            count += 1;
+        }
+        assertEquals(2176, count);
+    }
+
+    @Test
+    public void testMakeMoveUndo() {
+        Board b1 = new Board();
+        String init = b1.toString();
+        Move mv = Move.mv("d1-d7(d1)");
+        b1.makeMove(mv);
+        assertEquals(Piece.SPEAR, b1.get(3, 0));
+        assertEquals(WHITE, b1.get(3, 6));
+        assertEquals(Piece.BLACK, b1.turn());
+        b1.undo();
+        assertEquals(init, b1.toString());
+        assertEquals(WHITE, b1.turn());
+        assertEquals(0, b1.numMoves());
+    }
+
+    @Test
+    public void testKey() {
+        Board b1 = new Board();
+        Board b2 = new Board();
+        long init = b1.key();
+        b1.makeMove(Move.mv("d1-d5(d2)"));
+        b1.makeMove(Move.mv("d10-d6(d9)"));
+        b1.makeMove(Move.mv("g1-g5(g2)"));
+        b2.makeMove(Move.mv("g1-g5(g2)"));
+        b2.makeMove(Move.mv("d10-d6(d9)"));
+        b2.makeMove(Move.mv("d1-d5(d2)"));
+        assertEquals(b1.key(), b2.key());
+        assertEquals(b1.key(), new Board(b1).key());
+        b2.undo();
+        assertEquals(false, b1.key() == b2.key());
+        b1.undo();
+        b1.undo();
+        b1.undo();
+        assertEquals(init, b1.key());
+    }
+
+    @Test
+    public void testDistances() {
+        Board b = new Board();
+        int[] dist = new int[Board.SIZE * Board.SIZE];
+        b.queenDistances(WHITE, dist);
+        assertEquals(1, dist[Square.sq("a5").index()]);
+        assertEquals(1, dist[Square.sq("e4").index()]);
+        assertEquals(2, dist[Square.sq("e5").index()]);
+        assertEquals(Board.UNREACHABLE, dist[Square.sq("d1").index()]);
+        assertEquals(Board.UNREACHABLE, dist[Square.sq("d10").index()]);
+        b.kingDistances(WHITE, dist);
+        assertEquals(1, dist[Square.sq("a5").index()]);
+        assertEquals(4, dist[Square.sq("e5").index()]);
+    }
+
+    @Test
+    public void testRegions() {
+        Board b = new Board();
+        List<Region> regions = b.regions();
+        assertEquals(1, regions.size());
+        assertTrue(regions.get(0).contested());
+        assertEquals(92, regions.get(0).emptySquares());
+        for (int k = 0; k < Board.SIZE * Board.SIZE; k += 1) {
+            b.put(SPEAR, Square.sq(k));
+        }
+        b.put(WHITE, Square.sq("a1"));
+        b.put(EMPTY, Square.sq("b2"));
+        b.put(EMPTY, Square.sq("c1"));
+        b.put(BLACK, Square.sq("j10"));
+        b.put(WHITE, Square.sq("i9"));
+        regions = b.regions();
+        assertEquals(2, regions.size());
+        Region sealed = regions.get(0), open = regions.get(1);
+        assertEquals(WHITE, sealed.owner());
+        assertEquals(3, sealed.size());
+        assertEquals(2, sealed.emptySquares());
+        assertTrue(sealed.contains(Square.sq("c1").index()));
+        assertFalse(sealed.contains(Square.sq("b1").index()));
+        assertTrue(open.contested());
+        assertEquals(null, open.owner());
+    }
+
+    @Test
+    public void testLegalMoveCount() {
+        Board b = new Board();
+        Random random = new Random(61);
+        int[] moves = new int[Board.MAX_MOVES];
+        while (b.winner() == EMPTY) {
+            for (Piece side : new Piece[] { WHITE, BLACK }) {
+                int n = b.generateMoves(side, moves);
+                assertEquals(n, b.legalMoveCount(side));
+            }
+            int n = b.generateMoves(b.turn(), moves);
+            b.makeMove(moves[random.nextInt(n)]);
+        }
+        assertEquals(0, b.legalMoveCount(b.turn()));
+        while (b.numMoves() > 0) {
+            b.undo();
+        }
+        assertEquals(2176, b.legalMoveCount(WHITE));
+        assertEquals(new Board().mobility(BLACK), b.mobility(BLACK));
+    }
+
+    @Test
+    public void testSnapshot() {
+        Board b = new Board();
+        Random random = new Random(17);
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int i = 0; i < 30; i += 1) {
+            b.makeMove(moves[random.nextInt(b.generateMoves(b.turn(),
+                                                            moves))]);
+        }
+        Board.Position snap = b.snapshot();
+        String contents = b.toString();
+        long key = b.key();
+        int count = b.legalMoveCount(b.turn());
+        b.makeMove(moves[0]);
+        assertEquals(30, snap.numMoves());
+        assertEquals(key, snap.key());
+        Board copy = new Board(snap);
+        assertEquals(contents, copy.toString());
+        assertEquals(key, copy.key());
+        assertEquals(snap.turn(), copy.turn());
+        assertEquals(count, copy.legalMoveCount(copy.turn()));
+        b.copy(snap);
+        assertEquals(contents, b.toString());
+        while (copy.numMoves() > 0) {
+            copy.undo();
+        }
+        assertEquals(new Board().toString(), copy.toString());
+        assertEquals(new Board().key(), copy.key());
+    }
+
+    @Test
+    public void testHalfMoves() {
+        Board b = new Board();
+        Random random = new Random(23);
+        int[] moves = new int[Board.MAX_MOVES];
+        int[] queens = new int[Board.MAX_QUEEN_MOVES];
+        int[] spears = new int[Board.MAX_QUEEN_MOVES];
+        for (int i = 0; i < 20; i += 1) {
+            int n = b.generateMoves(b.turn(), moves);
+            int total = 0;
+            for (int k = b.generateQueenMoves(b.turn(), queens, 0, 0) - 1;
+                 k >= 0; k -= 1) {
+                int from = Move.from(queens[k]), to = Move.to(queens[k]);
+                long key = b.key();
+                b.moveQueen(from, to);
+                assertTrue(b.key() != key);
+                total += b.generateSpears(from, to, spears);
+                b.unmoveQueen(from, to);
+                assertEquals(key, b.key());
+            }
+            assertEquals(n, total);
+            int move = moves[random.nextInt(n)];
+            Board whole = new Board(b);
+            whole.makeMove(move);
+            b.moveQueen(Move.from(move), Move.to(move));
+            b.throwSpear(Move.from(move), Move.to(move), Move.spear(move));
+            assertEquals(whole.toString(), b.toString());
+            assertEquals(whole.key(), b.key());
+            assertEquals(whole.turn(), b.turn());
+            b.unthrowSpear();
+            b.unmoveQueen(Move.from(move), Move.to(move));
+            b.makeMove(move);
+            assertEquals(whole.key(), b.key());
+        }
+    }
+
+    @Test
+    public void testSelectiveMoves() {
+        Board b = Benchmark.position("middlegame");
+        int[] all = new int[Board.MAX_MOVES];
+        int[] some = new int[Board.MAX_MOVES];
+        int n = b.generateMoves(b.turn(), all);
+        assertEquals(n, b.generateMoves(b.turn(), some, 0, 0, 0));
+        assertEquals(n, b.generateMoves(b.turn(), some, 0, 0, 100));
+        int m = b.generateMoves(b.turn(), some, 0, 0, 3);
+        assertTrue(m < n);
+        Set<Integer> full = new HashSet<>();
+        Map<Integer, Integer> spears = new HashMap<>();
+        for (int i = 0; i < n; i += 1) {
+            full.add(all[i]);
+            spears.merge(all[i] & ((1 << 14) - 1), 1, Integer::sum);
+        }
+        Map<Integer, Integer> kept = new HashMap<>();
+        for (int i = 0; i < m; i += 1) {
+            assertTrue(full.contains(some[i]));
+            kept.merge(some[i] & ((1 << 14) - 1), 1, Integer::sum);
+        }
+        assertEquals(spears.keySet(), kept.keySet());
+        for (int queenMove : spears.keySet()) {
+            assertEquals(Math.min(3, spears.get(queenMove)),
+                         (int) kept.get(queenMove));
+        }
+    }
 }
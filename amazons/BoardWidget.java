@@ -133,13 +133,13 @@ class BoardWidget extends Pad {
         for (int i = 0; i < _board.getBoard().length; i += 1) {
             for (int j = 0; j < _board.getBoard().length; j += 1) {
                 Square cur = _board.getBoard()[i][j];
-                if (cur.getPiece() == WHITE) {
+                if (_board.get(cur) == WHITE) {
                     drawQueen(g, cur, WHITE);
                 }
-                if (cur.getPiece() == BLACK) {
+                if (_board.get(cur) == BLACK) {
                     drawQueen(g, cur, BLACK);
                 }
-                if (cur.getPiece() == SPEAR) {
+                if (_board.get(cur) == SPEAR) {
                     drawSpear(g, cur);
                 }
             }
@@ -172,18 +172,18 @@ class BoardWidget extends Pad {
             Square from = clicked.get(0);
             Square to = clicked.get(1);
             Square spear = clicked.get(2);
-            boolean chk1 = from.getPiece() == WHITE || from.getPiece() == BLACK;
-            boolean chk2 = to.getPiece() == EMPTY;
-            boolean chk3 = spear.getPiece() == EMPTY;
+            boolean chk1 = _board.isLegal(from);
+            boolean chk2 = _board.get(to) == EMPTY;
+            boolean chk3 = _board.get(spear) == EMPTY;
             if (from.row() == spear.row() && from.col() == spear.col()) {
                 chk3 = true;
             }
             boolean chk4 = _board.isLegal(from, to)
                     && _board.isUnblockedMove(to, spear, from);
-            boolean ch5 = from.getPiece() == WHITE;
+            boolean ch5 = _board.get(from) == WHITE;
             if (blackManual) {
-                ch5 = (from.getPiece() == WHITE && _board.getTurn() == WHITE)
-                        || (from.getPiece() == BLACK
+                ch5 = (_board.get(from) == WHITE && _board.getTurn() == WHITE)
+                        || (_board.get(from) == BLACK
                         && _board.getTurn() == BLACK);
             }
             if (chk1 && chk2 && chk3 && chk4 && ch5) {
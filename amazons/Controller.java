@@ -3,6 +3,7 @@ package amazons;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.Random;
 import java.util.Scanner;
 import java.util.regex.Pattern;
@@ -68,6 +69,54 @@ final class Controller {
         if (_logFile != null) {
             _logFile.close();
         }
+        if (_journal != null) {
+            try {
+                _journal.close();
+            } catch (IOException excp) {
+                reportError("Could not write journal: %s%n",
+                            excp.getMessage());
+            }
+        }
+    }
+
+    /** Append each game played by play to JOURNAL (if non-null), which
+     *  is closed when play returns.  Games abandoned by "new" or "quit"
+     *  are recorded as unfinished. */
+    void setJournal(GameJournal.Writer journal) {
+        _journal = journal;
+    }
+
+    /** Play one game between WHITE and BLACK, which must have been
+     *  created for this Controller, without reading commands, and return
+     *  the winner.  The game starts with the moves OPENING, which must
+     *  be legal.  The board is shown on my view after each move.  A
+     *  player that returns anything but a legal move for its side loses
+     *  at once. */
+    Piece playGame(Player white, Player black, Move... opening) {
+        _board.init();
+        for (Move move : opening) {
+            _board.makeMove(move);
+        }
+        _white = white;
+        _black = black;
+        _winner = null;
+        while (_board.winner() == EMPTY) {
+            _view.update(_board);
+            Piece side = _board.turn();
+            String command = (side == WHITE ? _white : _black).myMove();
+            Move move = command == null ? null : Move.mv(command);
+            if (move == null || _board.get(move.from()) != side
+                || !_board.isLegal(move)) {
+                reportError("%s made an illegal move: %s%n",
+                            side.toName(), command);
+                _winner = side.opponent();
+                return _winner;
+            }
+            _board.makeMove(move);
+        }
+        _view.update(_board);
+        _winner = _board.winner();
+        return _winner;
     }
 
     /** Return the current board.  The value returned should not be
@@ -88,6 +137,7 @@ final class Controller {
      *  with the value SEED. Identical seeds produce identical sequences.
      *  Initially, the PRNG is randomly seeded. */
     void setSeed(long seed) {
+        _seed = seed;
         _randGen.setSeed(seed);
     }
 
@@ -119,6 +169,12 @@ final class Controller {
         _reporter.reportMove(move);
     }
 
+    /** Report the search statistics STATS of SIDE's player by calling
+     *  reportStats(SIDE, STATS) on my reporter. */
+    void reportStats(Piece side, SearchStats stats) {
+        _reporter.reportStats(side, stats);
+    }
+
     /** A Command is pair (<pattern>, <processor>), where <pattern> is a
      *  Matcher that matches instances of a particular command, and
      *  <processor> is a functional object whose .accept method takes a
@@ -150,7 +206,13 @@ final class Controller {
                 + "\\s[a-z](?:[1-9]|0[1-9]|10)$", this::doMove),
         new Command("[a-z](?:[1-9]|0[1-9]|10)-[a-z](?:[1-9]|0[1-9]|10)"
                 + "\\([a-z](?:[1-9]|0[1-9]|10)\\)$", this::doMove),
-        new Command("undo$", this::doUndo)
+        new Command("undo$", this::doUndo),
+        new Command("stats$", this::doStats),
+        new Command("time\\s+(\\d+)$", this::doTime),
+        new Command("eval\\s+([a-z]+)$", this::doEval),
+        new Command("ponder\\s+(on|off)$", this::doPonder),
+        new Command("perft\\s+(?:(divide|parallel|count)\\s+)?(\\d+)$",
+                    this::doPerft)
     };
 
     /** A Matcher whose Pattern matches comments. */
@@ -182,12 +244,20 @@ final class Controller {
 
     /** Command "new". */
     private void doNew(Matcher unused) {
+        stopPlayers();
+        if (_winner == null) {
+            journalGame();
+        }
         _board.init();
         _winner = null;
     }
 
     /** Command "quit". */
     private void doQuit(Matcher unused) {
+        stopPlayers();
+        if (_winner == null) {
+            journalGame();
+        }
         _playing = false;
     }
 
@@ -204,6 +274,7 @@ final class Controller {
      * @param mat mat
      */
     private void doAuto(Matcher mat) {
+        stopPlayers();
         try {
             String c = mat.group(1).toLowerCase();
             if (c.equals("black")) {
@@ -224,6 +295,7 @@ final class Controller {
     /** manual.
      * @param mat mat */
     private void doManual(Matcher mat) {
+        stopPlayers();
         try {
             String c = mat.group(1).toLowerCase();
             if (c.equals("black")) {
@@ -244,6 +316,7 @@ final class Controller {
     /** undo.
      * @param move move */
     private void doUndo(Matcher move) {
+        stopPlayers();
         _board.undo();
     }
 
@@ -299,7 +372,7 @@ final class Controller {
                 throw new IOException("Incorrect input-3");
             }
             Square spear = _board.getBoard()[spearr][spearc];
-            if (from.getPiece() != _board.turn()) {
+            if (_board.get(from) != _board.turn()) {
                 throw new IOException("Not your turn");
             }
             _board.makeMove(from, to, spear);
@@ -342,6 +415,8 @@ final class Controller {
     private void setWinner() {
         Piece checkw = _board.winner();
         if (checkw != EMPTY) {
+            stopPlayers();
+            journalGame();
             _winner = _board.getWinner();
             if (_winner == WHITE) {
                 reportNote("White wins.");
@@ -353,6 +428,115 @@ final class Controller {
         }
     }
 
+    /** Append the current game, if it has begun, to my journal, if I
+     *  have one. */
+    private void journalGame() {
+        if (_journal == null || _board.numMoves() == 0) {
+            return;
+        }
+        try {
+            _journal.write(new GameRecord(describe(_white), describe(_black),
+                                          _seed, _board));
+        } catch (IOException excp) {
+            reportError("Could not write journal: %s%n", excp.getMessage());
+        }
+    }
+
+    /** Return the description of PLAYER recorded in my journal. */
+    private static String describe(Player player) {
+        return player.getClass().getSimpleName();
+    }
+
+    /** Command "time N", where N is the first group of MAT: give each
+     *  automated player a budget of N milliseconds per move (0 for no
+     *  limit). */
+    private void doTime(Matcher mat) {
+        if (_autoPlayerTemplate.options() == null) {
+            throw error("automated players have no time control");
+        }
+        try {
+            _autoPlayerTemplate.options()
+                .setMoveTime(Long.parseLong(mat.group(1)));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /** Command "ponder on|off", where the setting is the first group of
+     *  MAT: have the automated players search on their opponents' time
+     *  or not. */
+    private void doPonder(Matcher mat) {
+        if (_autoPlayerTemplate.options() == null) {
+            throw error("automated players cannot ponder");
+        }
+        _autoPlayerTemplate.options().setPonder(mat.group(1).equals("on"));
+        if (mat.group(1).equals("off")) {
+            stopPlayers();
+        }
+    }
+
+    /** Stop any searches my players are doing in the background
+     *  (pondering), since the board is about to change other than by
+     *  the move they expect, or the players are to be replaced. */
+    private void stopPlayers() {
+        for (Player p : new Player[] { _white, _black }) {
+            if (p != null) {
+                p.stop();
+            }
+        }
+    }
+
+    /** Command "eval NAME", where NAME is the first group of MAT: have
+     *  the automated players evaluate positions with the Evaluator
+     *  called NAME. */
+    private void doEval(Matcher mat) {
+        if (_autoPlayerTemplate.options() == null) {
+            throw error("automated players have no evaluator");
+        }
+        _autoPlayerTemplate.options().setEvaluator(mat.group(1));
+    }
+
+    /** Command "stats": print statistics about the automated players'
+     *  last searches. */
+    private void doStats(Matcher unused) {
+        for (Player p : new Player[] { _white, _black }) {
+            if (p != null && p.statistics() != null) {
+                System.out.println(p.statistics());
+            }
+        }
+    }
+
+    /** Command "perft [divide|parallel|count] N", where the optional
+     *  mode is group 1 of MAT and N is group 2: count the leaves of the
+     *  legal-move tree of depth N from the current position. */
+    private void doPerft(Matcher mat) {
+        int depth;
+        try {
+            depth = Integer.parseInt(mat.group(2));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        String mode = mat.group(1);
+        long start = System.nanoTime();
+        long nodes;
+        if (mode == null || depth == 0) {
+            nodes = Perft.perft(_board, depth);
+        } else if (mode.equals("divide")) {
+            Map<Move, Long> counts = Perft.divide(_board, depth, 1);
+            for (Map.Entry<Move, Long> e : counts.entrySet()) {
+                System.out.printf("%s: %d%n", e.getKey(), e.getValue());
+            }
+            nodes = Perft.total(counts);
+        } else if (mode.equals("count")) {
+            nodes = Perft.countedPerft(_board, depth);
+        } else {
+            int threads = Runtime.getRuntime().availableProcessors();
+            nodes = Perft.total(Perft.divide(_board, depth, threads));
+        }
+        System.out.println(Perft.summary(depth, nodes,
+                                         System.nanoTime() - start));
+    }
+
     /** Dump the contents of the board on standard output. */
     private void doDump(Matcher unused) {
         System.out.printf("===%n%s===%n", _board);
@@ -370,12 +554,18 @@ final class Controller {
     /** The object that is displaying the current game. */
     private View _view;
 
+    /** The last seed of _randGen. */
+    private long _seed = new Random().nextLong();
+
     /** My pseudo-random number generator. */
-    private Random _randGen = new Random();
+    private Random _randGen = new Random(_seed);
 
     /** Log file, or null if absent. */
     private PrintStream _logFile;
 
+    /** Journal of played games, or null if absent. */
+    private GameJournal.Writer _journal;
+
     /** Input source. */
     private Scanner _input;
 
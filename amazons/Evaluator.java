@@ -0,0 +1,46 @@
+package amazons;
+
+import static amazons.Utils.error;
+
+/** A static evaluation of positions for the AI's search.  Scores are
+ *  from White's point of view: positive when White is ahead.  An
+ *  Evaluator may keep scratch space between calls, so each searching
+ *  thread uses its own (see create).
+ *  @author Joseph Park
+ */
+interface Evaluator {
+
+    /** Names of the available evaluators, as accepted by create. */
+    String[] NAMES = { "territory", "mobility" };
+
+    /** Return a heuristic value of BOARD, whose game is not over. */
+    int evaluate(Board board);
+
+    /** Return the half-width of the search's aspiration window around
+     *  the previous iteration's value, in my units: a margin within
+     *  which that value usually stays from one depth to the next. */
+    int aspirationWindow();
+
+    /** Return a new evaluator of the kind OPTIONS names, with the
+     *  weights OPTIONS gives it, if any. */
+    static Evaluator create(SearchOptions options) {
+        if (options.evaluator().equals("territory")) {
+            return new TerritoryEvaluator(options.openingWeights(),
+                                          options.endgameWeights());
+        }
+        return create(options.evaluator());
+    }
+
+    /** Return a new evaluator of the kind called NAME, one of NAMES,
+     *  with its default weights. */
+    static Evaluator create(String name) {
+        switch (name) {
+        case "territory":
+            return new TerritoryEvaluator();
+        case "mobility":
+            return new MobilityEvaluator();
+        default:
+            throw error("unknown evaluator: %s", name);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package amazons;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static amazons.Piece.*;
+import static amazons.Utils.error;
+
+/** A journal of played games (GameRecords) in a compact binary file,
+ *  for storing and replaying large numbers of games without formatting
+ *  or parsing text.  The file holds the 8 bytes of MAGIC followed by
+ *  one record per game:
+ *  <pre>
+ *  short moves    number of moves, N
+ *  byte  winner   0 if unfinished, 1 if White won, 2 if Black won
+ *  byte  length   length in bytes of the White player's description
+ *  ...            the description, in UTF-8
+ *  byte  length   the same for the Black player
+ *  ...
+ *  long  seed     the game's random seed
+ *  ...            N moves of MOVE_BYTES bytes each: the move's code (see
+ *                 Move.code), most significant byte first
+ *  </pre>
+ *  so that a game of 80 moves between short-named players takes about
+ *  260 bytes.  A Writer appends to a journal in large blocks; a Reader
+ *  maps a journal of any size into memory a window at a time, and
+ *  iterates over its games.
+ *  @author Joseph Park
+ */
+final class GameJournal {
+
+    /** First eight bytes of a journal file ("AMZJRNL1"). */
+    static final long MAGIC = 0x414d5a4a524e4c31L;
+    /** Size of the file header, in bytes. */
+    static final int HEADER_BYTES = 8;
+    /** Size of an encoded move, in bytes. */
+    static final int MOVE_BYTES = 3;
+    /** Longest player description, in bytes of UTF-8. */
+    static final int MAX_NAME_BYTES = 255;
+    /** Size of the longest possible record, in bytes. */
+    static final int MAX_RECORD_BYTES =
+        4 + 2 * MAX_NAME_BYTES + 8 + MOVE_BYTES * Board.SIZE * Board.SIZE;
+
+    /** Not instantiable. */
+    private GameJournal() {
+    }
+
+    /** Appends games to a journal file.  Records are gathered in a
+     *  buffer of BUFFER_BYTES bytes and written when it fills, when the
+     *  Writer is flushed, and when it is closed, so that most games cost
+     *  no system call.  Writers are synchronized, so that several
+     *  threads may share one. */
+    static final class Writer implements Closeable {
+
+        /** Size of a Writer's buffer, in bytes. */
+        static final int BUFFER_BYTES = 1 << 16;
+
+        /** A Writer that appends to the journal in FILE, creating it if
+         *  it does not exist. */
+        Writer(Path file) throws IOException {
+            _channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                        StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+            try {
+                _buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+                if (_channel.size() == 0) {
+                    _buffer.putLong(MAGIC);
+                } else {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                    _channel.read(header, 0);
+                    if (header.position() < HEADER_BYTES
+                        || header.getLong(0) != MAGIC) {
+                        throw error("%s is not a game journal", file);
+                    }
+                }
+                _channel.position(_channel.size());
+            } catch (IOException | IllegalArgumentException excp) {
+                _channel.close();
+                throw excp;
+            }
+        }
+
+        /** Append GAME. */
+        synchronized void write(GameRecord game) throws IOException {
+            if (_buffer.remaining() < MAX_RECORD_BYTES) {
+                drain();
+            }
+            encode(game, _buffer);
+            _games += 1;
+        }
+
+        /** Write any buffered games to the file. */
+        synchronized void flush() throws IOException {
+            drain();
+        }
+
+        /** Return the number of games I have written. */
+        synchronized long games() {
+            return _games;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (_channel.isOpen()) {
+                try {
+                    drain();
+                } finally {
+                    _channel.close();
+                }
+            }
+        }
+
+        /** Write the contents of my buffer and empty it. */
+        private void drain() throws IOException {
+            _buffer.flip();
+            while (_buffer.hasRemaining()) {
+                _channel.write(_buffer);
+            }
+            _buffer.clear();
+        }
+
+        /** The file. */
+        private final FileChannel _channel;
+        /** Records not yet written to _channel. */
+        private final ByteBuffer _buffer;
+        /** Number of games written. */
+        private long _games;
+    }
+
+    /** Iterates over the games in a journal file, which it maps into
+     *  memory rather than reads.  Files of more than WINDOW_BYTES bytes
+     *  are mapped in overlapping windows of that size, since one mapping
+     *  can hold no more than 2GB. */
+    static final class Reader implements Iterable<GameRecord>, Closeable {
+
+        /** Largest window of the file mapped at once, in bytes. */
+        static final int WINDOW_BYTES = 1 << 30;
+
+        /** A Reader for the journal in FILE. */
+        Reader(Path file) throws IOException {
+            this(file, WINDOW_BYTES);
+        }
+
+        /** A Reader for the journal in FILE that maps windows of WINDOW
+         *  bytes, which must be at least MAX_RECORD_BYTES. */
+        Reader(Path file, int window) throws IOException {
+            if (window < MAX_RECORD_BYTES) {
+                throw error("journal window too small");
+            }
+            _file = file;
+            _windowBytes = window;
+            _channel = FileChannel.open(file);
+            try {
+                _size = _channel.size();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                _channel.read(header, 0);
+                if (header.position() < HEADER_BYTES
+                    || header.getLong(0) != MAGIC) {
+                    throw error("%s is not a game journal", file);
+                }
+            } catch (IOException | IllegalArgumentException excp) {
+                _channel.close();
+                throw excp;
+            }
+        }
+
+        /** Return the size of my file, in bytes. */
+        long size() {
+            return _size;
+        }
+
+        /** Return an Iterator over my games, in the order written.  It
+         *  throws IllegalArgumentException on reaching a damaged or
+         *  incomplete record. */
+        @Override
+        public Iterator<GameRecord> iterator() {
+            return new Games();
+        }
+
+        @Override
+        public void close() throws IOException {
+            _channel.close();
+        }
+
+        /** An Iterator over the games in my file. */
+        private class Games implements Iterator<GameRecord> {
+
+            @Override
+            public boolean hasNext() {
+                return _offset < _size;
+            }
+
+            @Override
+            public GameRecord next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (_window == null
+                    || _offset + MAX_RECORD_BYTES > _base + _window.limit()
+                    && _base + _window.limit() < _size) {
+                    map(_offset);
+                }
+                _window.position((int) (_offset - _base));
+                try {
+                    GameRecord game = decode(_window);
+                    _offset = _base + _window.position();
+                    return game;
+                } catch (BufferUnderflowException excp) {
+                    throw error("%s: incomplete game at byte %d", _file,
+                                _offset);
+                }
+            }
+
+            /** Map the window of my file that starts at byte START. */
+            private void map(long start) {
+                try {
+                    _base = start;
+                    _window =
+                        _channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                     Math.min(_windowBytes, _size - start));
+                } catch (IOException excp) {
+                    throw error("could not map %s: %s", _file,
+                                excp.getMessage());
+                }
+            }
+
+            /** Offset of the next game in the file. */
+            private long _offset = HEADER_BYTES;
+            /** Offset in the file of the start of _window. */
+            private long _base;
+            /** The mapped part of the file, or null if none. */
+            private ByteBuffer _window;
+        }
+
+        /** The name of my file. */
+        private final Path _file;
+        /** Largest window of _file mapped at once. */
+        private final int _windowBytes;
+        /** My file. */
+        private final FileChannel _channel;
+        /** Size of my file. */
+        private final long _size;
+    }
+
+    /** Append the record of GAME to OUT. */
+    static void encode(GameRecord game, ByteBuffer out) {
+        Piece winner = game.winner();
+        byte[] white = nameBytes(game.white()),
+            black = nameBytes(game.black());
+        out.putShort((short) game.length());
+        out.put((byte) (winner == WHITE ? 1 : winner == BLACK ? 2 : 0));
+        out.put((byte) white.length).put(white);
+        out.put((byte) black.length).put(black);
+        out.putLong(game.seed());
+        for (int k = 0; k < game.length(); k += 1) {
+            int move = game.move(k);
+            out.put((byte) (move >>> 16));
+            out.put((byte) (move >>> 8));
+            out.put((byte) move);
+        }
+    }
+
+    /** Return the game whose record starts at IN's position, leaving IN
+     *  positioned after it. */
+    static GameRecord decode(ByteBuffer in) {
+        int length = in.getShort() & 0xffff;
+        int result = in.get();
+        String white = getName(in), black = getName(in);
+        long seed = in.getLong();
+        if (length > Board.SIZE * Board.SIZE || result < 0 || result > 2) {
+            throw error("damaged game record");
+        }
+        int[] moves = new int[length];
+        for (int k = 0; k < length; k += 1) {
+            moves[k] = (in.get() & 0xff) << 16 | (in.get() & 0xff) << 8
+                | in.get() & 0xff;
+        }
+        return new GameRecord(white, black, seed, moves,
+                              result == 1 ? WHITE
+                              : result == 2 ? BLACK : EMPTY);
+    }
+
+    /** Return player description NAME in UTF-8. */
+    private static byte[] nameBytes(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_NAME_BYTES) {
+            throw error("player description too long: %s", name);
+        }
+        return bytes;
+    }
+
+    /** Return the player description at IN's position, leaving IN
+     *  positioned after it. */
+    private static String getName(ByteBuffer in) {
+        byte[] bytes = new byte[in.get() & 0xff];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
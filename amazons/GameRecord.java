@@ -0,0 +1,112 @@
+package amazons;
+
+import java.util.Arrays;
+
+import static amazons.Piece.*;
+
+/** The record of one game, as kept in a GameJournal: who played it, the
+ *  seed of its random choices, its moves, and its result.  GameRecords
+ *  are immutable.
+ *  @author Joseph Park
+ */
+final class GameRecord {
+
+    /** The record of a game between players described as WHITE and
+     *  BLACK, using random seed SEED, in which the moves with codes
+     *  MOVES were played and WINNER won (EMPTY if the game was not
+     *  finished). */
+    GameRecord(String white, String black, long seed, int[] moves,
+               Piece winner) {
+        if (moves.length > Board.SIZE * Board.SIZE) {
+            throw Utils.error("too many moves for one game");
+        }
+        _white = white;
+        _black = black;
+        _seed = seed;
+        _moves = moves.clone();
+        _winner = winner;
+    }
+
+    /** The record of the game so far on BOARD between players described
+     *  as WHITE and BLACK, using random seed SEED. */
+    GameRecord(String white, String black, long seed, Board board) {
+        this(white, black, seed, board.history(), board.winner());
+    }
+
+    /** Return the description of the White player. */
+    String white() {
+        return _white;
+    }
+
+    /** Return the description of the Black player. */
+    String black() {
+        return _black;
+    }
+
+    /** Return the seed of the game's random choices. */
+    long seed() {
+        return _seed;
+    }
+
+    /** Return the winner, or EMPTY if the game was not finished. */
+    Piece winner() {
+        return _winner;
+    }
+
+    /** Return the number of moves. */
+    int length() {
+        return _moves.length;
+    }
+
+    /** Return the code (see Move.code) of move #K, counting from 0. */
+    int move(int k) {
+        return _moves[k];
+    }
+
+    /** Return a new Board with my moves played on it. */
+    Board replay() {
+        Board board = new Board();
+        for (int move : _moves) {
+            board.makeMove(move);
+        }
+        return board;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof GameRecord)) {
+            return false;
+        }
+        GameRecord other = (GameRecord) obj;
+        return _white.equals(other._white) && _black.equals(other._black)
+            && _seed == other._seed && _winner == other._winner
+            && Arrays.equals(_moves, other._moves);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_moves) * 31 + Long.hashCode(_seed);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("%s vs. %s, seed %d: ", _white, _black,
+                                    _seed));
+        for (int move : _moves) {
+            result.append(Move.toString(move)).append(' ');
+        }
+        result.append(_winner == EMPTY ? "unfinished"
+                      : _winner.toName() + " wins");
+        return result.toString();
+    }
+
+    /** The players. */
+    private final String _white, _black;
+    /** The random seed. */
+    private final long _seed;
+    /** The codes of the moves. */
+    private final int[] _moves;
+    /** The winner, or EMPTY. */
+    private final Piece _winner;
+}
@@ -0,0 +1,49 @@
+package amazons;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A JDK Flight Recorder event for one completed iteration of an AI's
+ *  iterative-deepening search by one of its threads.  The event's
+ *  duration is the iteration's.
+ *  @author Joseph Park
+ */
+@Name("amazons.Iteration")
+@Label("Amazons Search Iteration")
+@Category("Amazons")
+@Description("One iteration of iterative deepening")
+class IterationEvent extends Event {
+
+    /** Record that searching thread THREAD completed an iteration to
+     *  DEPTH, visiting NODES positions and finding value SCORE, and
+     *  commit the event if it is enabled. */
+    void finish(int thread, int depth, long nodes, int score) {
+        if (!shouldCommit()) {
+            return;
+        }
+        this.thread = thread;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.score = score;
+        commit();
+    }
+
+    /** Number of the searching thread (0 for the controlling one). */
+    @Label("Search Thread")
+    private int thread;
+
+    /** Depth of the iteration. */
+    @Label("Depth")
+    private int depth;
+
+    /** Positions visited by the iteration. */
+    @Label("Nodes")
+    private long nodes;
+
+    /** Value found (positive if good for White). */
+    @Label("Score")
+    private int score;
+}
@@ -3,7 +3,6 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 import ucb.junit.textui;
 
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
@@ -46,18 +45,10 @@ public class IteratorTests {
     }
 
     private void buildBoard(Board b, Piece[][] target) {
-        b.setQueenposw(new ArrayList<>());
-        b.setQueenposw(new ArrayList<>());
         for (int col = 0; col < Board.SIZE; col++) {
             for (int row = 0; row < Board.SIZE; row++) {
                 Piece piece = target[row][col];
                 b.put(piece, Square.sq(col, row));
-                if (piece == Piece.WHITE) {
-                    b.getQueenposw().add(Square.sq(col, row));
-                }
-                if (piece == Piece.BLACK) {
-                    b.getQueenposb().add(Square.sq(col, row));
-                }
             }
         }
     }
@@ -109,4 +100,49 @@ public class IteratorTests {
             new HashSet<>(Arrays.asList(
                     Square.sq(9, 4)));
 
+    /** Checks that generateMoves produces the same moves as legalMoves,
+     *  in the same order, for both sides of the benchmark positions. */
+    @Test
+    public void testGenerateMoves() {
+        int[] codes = new int[Board.MAX_MOVES];
+        for (String name : Benchmark.POSITIONS) {
+            Board b = Benchmark.position(name);
+            for (Piece side : new Piece[] { Piece.WHITE, Piece.BLACK }) {
+                int n = b.generateMoves(side, codes);
+                Iterator<Move> moves = b.legalMoves(side);
+                for (int i = 0; i < n; i += 1) {
+                    assertTrue(moves.hasNext());
+                    assertEquals(moves.next().code(), codes[i]);
+                    assertTrue(b.isLegal(codes[i]));
+                }
+                assertFalse(moves.hasNext());
+            }
+        }
+    }
+
+    /** Checks legalMoves against the known perft counts from the
+     *  initial position, sequentially and split over threads. */
+    @Test
+    public void testPerft() {
+        Board b = new Board();
+        assertEquals(1, Perft.perft(b, 0));
+        assertEquals(2176, Perft.perft(b, 1));
+        assertEquals(4307152, Perft.perft(b, 2));
+        assertEquals(4307152, Perft.total(Perft.divide(b, 2, 4)));
+        assertEquals(new Board().toString(), b.toString());
+    }
+
+    /** Checks that counting the last ply with legalMoveCount gives the
+     *  same perft counts as generating it, from the benchmark
+     *  positions. */
+    @Test
+    public void testCountedPerft() {
+        assertEquals(4307152, Perft.countedPerft(new Board(), 2));
+        for (String name : Benchmark.POSITIONS) {
+            Board b = Benchmark.position(name);
+            assertEquals(Perft.perft(b, 1), Perft.countedPerft(b, 1));
+            assertEquals(Perft.perft(b, 2), Perft.countedPerft(b, 2));
+        }
+    }
+
 }
@@ -0,0 +1,526 @@
+package amazons;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static amazons.Piece.*;
+
+/**
+ * A Player that chooses moves by Monte Carlo tree search.  Each
+ * iteration descends the tree by UCT, adds a node, plays a few random
+ * moves from it, and judges the result with the static evaluator of my
+ * options (a truncated playout), crediting the outcome to every node on
+ * the way down.  A position in Amazons can have thousands of moves, so
+ * a node's children are added gradually ("progressive widening"): a
+ * node visited N times may have about WIDENING * sqrt(N) children, taken
+ * from its moves in random order.
+ *
+ * <p>With more than one thread in my options, all threads work on the
+ * one tree, each on its own copy of the position.  A thread passing
+ * through a node counts a visit there at once, before its result is
+ * known (a "virtual loss"), which steers the other threads to different
+ * lines meanwhile.
+ *
+ * @author Joseph Park
+ */
+class MCTSPlayer extends Player {
+
+    /**
+     * A new player with no piece or controller (intended to produce a
+     * template).
+     */
+    MCTSPlayer() {
+        this(new SearchOptions());
+    }
+
+    /**
+     * A new template whose players search according to OPTIONS.
+     */
+    MCTSPlayer(SearchOptions options) {
+        this(null, null, options);
+    }
+
+    /**
+     * A new player of PIECE under control of CONTROLLER, searching
+     * according to OPTIONS.
+     */
+    MCTSPlayer(Piece piece, Controller controller, SearchOptions options) {
+        super(piece, controller);
+        _options = options;
+    }
+
+    @Override
+    Player create(Piece piece, Controller controller) {
+        return new MCTSPlayer(piece, controller, _options);
+    }
+
+    @Override
+    SearchOptions options() {
+        return _options;
+    }
+
+    @Override
+    String myMove() {
+        Move move = findMove(board());
+        _controller.reportMove(move);
+        return move.toString();
+    }
+
+    /**
+     * Return a move for the side to move in POSITION, which must have a
+     * move.  Searches until the time budget or the playout limit in my
+     * options is reached (with neither, until DEFAULT_PLAYOUTS playouts)
+     * and returns the most visited move at the root.  POSITION is not
+     * modified.
+     */
+    @Override
+    Move findMove(Board position) {
+        long budget = _options.moveTime() * 1_000_000L;
+        _start = System.nanoTime();
+        _deadline = budget > 0 ? _start + budget : Long.MAX_VALUE;
+        long limit = _options.playouts();
+        _limit = limit > 0 ? limit : budget > 0 ? Long.MAX_VALUE
+            : DEFAULT_PLAYOUTS;
+        _playouts.set(0);
+        _stopped = false;
+        if (_prepared && _stopRequested) {
+            _stopped = true;
+        }
+        _prepared = false;
+        _rootSide = position.turn();
+        _root = new Node(Move.NONE);
+        int threads = _options.threads();
+        List<Future<?>> running = new ArrayList<>();
+        ThreadLocalRandom seeds = ThreadLocalRandom.current();
+        Board.Position root = position.snapshot();
+        for (int i = 1; i < threads; i += 1) {
+            Worker helper = new Worker(root, seeds.nextLong());
+            running.add(helpers(threads - 1).submit(() -> helper.run(false)));
+        }
+        new Worker(root, seeds.nextLong()).run(true);
+        _stopped = true;
+        for (Future<?> f : running) {
+            try {
+                f.get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException(excp);
+            }
+        }
+        _elapsed = System.nanoTime() - _start;
+        Node best = _root.mostVisited();
+        _bestVisits = best._visits;
+        _bestValue = best._wins / Math.max(best._visits, 1);
+        return Move.mv(best._move);
+    }
+
+    @Override
+    void stop() {
+        _stopRequested = true;
+        _stopped = true;
+    }
+
+    @Override
+    void prepareSearch() {
+        _stopRequested = false;
+        _prepared = true;
+    }
+
+    @Override
+    String statistics() {
+        long playouts = Math.min(_playouts.get(), _limit);
+        return String.format("%s: %d playouts in %.3f s (%.0f/s), "
+                             + "best move %d visits, %.1f%% wins",
+                             _myPiece.toName(), playouts, _elapsed / 1e9,
+                             playouts / Math.max(_elapsed / 1e9, 1e-9),
+                             _bestVisits, 100.0 * _bestValue);
+    }
+
+    @Override
+    long nodes() {
+        return playouts();
+    }
+
+    /**
+     * Return the number of playouts made by the last search.
+     */
+    long playouts() {
+        return Math.min(_playouts.get(), _limit);
+    }
+
+    /**
+     * Return a pool of N helper threads, creating it if necessary.  The
+     * threads exit when idle.
+     */
+    private ExecutorService helpers(int n) {
+        if (_helpers == null || _helperCount != n) {
+            if (_helpers != null) {
+                _helpers.shutdown();
+            }
+            ThreadPoolExecutor pool =
+                new ThreadPoolExecutor(n, n, 1, TimeUnit.SECONDS,
+                                       new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "amazons-mcts");
+                    t.setDaemon(true);
+                    return t;
+                });
+            pool.allowCoreThreadTimeOut(true);
+            _helpers = pool;
+            _helperCount = n;
+        }
+        return _helpers;
+    }
+
+    /**
+     * A node of the search tree: a position, reached from its parent by
+     * _move.  Its statistics count wins for the side that made _move.
+     * All fields but _move are guarded by the node's lock.
+     */
+    private static class Node {
+
+        /**
+         * A node reached by MOVE (Move.NONE for the root).
+         */
+        Node(int move) {
+            _move = move;
+        }
+
+        /**
+         * Return the child of this node to descend to from BOARD (which
+         * holds this node's position), counting a visit to it, or null
+         * if the side to move has no moves.  The first call generates
+         * the moves, shuffled by RANDOM, using the scratch list
+         * MOVES.  A new child is added whenever the visits allow it;
+         * otherwise the child with the best UCT score is chosen.
+         */
+        synchronized Node select(Board board, SplittableRandom random,
+                                 int[] moves) {
+            if (_moves == null) {
+                int n = board.generateMoves(board.turn(), moves);
+                _moves = Arrays.copyOf(moves, n);
+                for (int i = n - 1; i > 0; i -= 1) {
+                    int j = random.nextInt(i + 1), t = _moves[i];
+                    _moves[i] = _moves[j];
+                    _moves[j] = t;
+                }
+                _children = new Node[n];
+            }
+            if (_moves.length == 0) {
+                return null;
+            }
+            int width = 1 + (int) (WIDENING * Math.sqrt(_visits));
+            Node result;
+            if (_size < Math.min(width, _moves.length)) {
+                result = _children[_size] = new Node(_moves[_size]);
+                _size += 1;
+            } else {
+                double logN = Math.log(_visits), bestScore = -1;
+                result = null;
+                for (int i = 0; i < _size; i += 1) {
+                    double score = _children[i].uct(logN);
+                    if (score > bestScore) {
+                        bestScore = score;
+                        result = _children[i];
+                    }
+                }
+            }
+            result.visit();
+            return result;
+        }
+
+        /**
+         * Return my UCT score, given the log of my parent's visits,
+         * LOGN.
+         */
+        synchronized double uct(double logN) {
+            return _wins / _visits + EXPLORATION * Math.sqrt(logN / _visits);
+        }
+
+        /**
+         * Return true iff my moves have been generated, that is, iff a
+         * search has passed through me.
+         */
+        synchronized boolean expanded() {
+            return _moves != null;
+        }
+
+        /**
+         * Count a visit whose outcome is not yet known.
+         */
+        synchronized void visit() {
+            _visits += 1;
+        }
+
+        /**
+         * Credit a visit with outcome RESULT (1 for a win, 0 for a
+         * loss).
+         */
+        synchronized void credit(double result) {
+            _wins += result;
+        }
+
+        /**
+         * Return my most visited child.
+         */
+        synchronized Node mostVisited() {
+            Node best = null;
+            for (int i = 0; i < _size; i += 1) {
+                if (best == null || _children[i]._visits > best._visits) {
+                    best = _children[i];
+                }
+            }
+            return best;
+        }
+
+        /**
+         * The move leading here.
+         */
+        private final int _move;
+
+        /**
+         * Number of visits so far, including those in progress.
+         */
+        private int _visits;
+
+        /**
+         * Total outcome of the completed visits.
+         */
+        private double _wins;
+
+        /**
+         * Moves from this position in the order in which children are
+         * added, or null if not yet generated.
+         */
+        private int[] _moves;
+
+        /**
+         * Children for _moves[0 .. _size - 1].
+         */
+        private Node[] _children;
+
+        /**
+         * Number of children.
+         */
+        private int _size;
+    }
+
+    /**
+     * One thread's share of a search.
+     */
+    private class Worker {
+
+        /**
+         * A worker searching POSITION, with random seed SEED.
+         */
+        Worker(Board.Position position, long seed) {
+            _board = new Board(position);
+            _random = new SplittableRandom(seed);
+            _eval = Evaluator.create(_options.evaluator());
+        }
+
+        /**
+         * Run iterations until the search is over.  The CONTROLLING
+         * worker makes at least one, so that there is always a move,
+         * even if the search was stopped before it began.
+         */
+        void run(boolean controlling) {
+            boolean first = controlling;
+            while ((first || !_stopped)
+                   && _playouts.getAndIncrement() < _limit) {
+                first = false;
+                iterate();
+                if (System.nanoTime() > _deadline) {
+                    _stopped = true;
+                }
+            }
+        }
+
+        /**
+         * Descend from the root to a new node, make a playout there, and
+         * credit the result along the path.
+         */
+        private void iterate() {
+            Node node = _root;
+            node.visit();
+            _path[0] = node;
+            int depth = 0;
+            while (true) {
+                Node child = node.select(_board, _random, _moves);
+                if (child == null) {
+                    break;
+                }
+                _board.makeMove(child._move);
+                depth += 1;
+                _path[depth] = child;
+                node = child;
+                if (!child.expanded()) {
+                    break;
+                }
+            }
+            double white = playout();
+            for (int d = depth; d >= 0; d -= 1) {
+                Piece mover = (d & 1) == 1 ? _rootSide : _rootSide.opponent();
+                _path[d].credit(mover == WHITE ? white : 1 - white);
+                if (d > 0) {
+                    _board.undo();
+                }
+            }
+        }
+
+        /**
+         * Play up to PLAYOUT_PLIES random moves from my position and
+         * return the outcome for White: 1 if White has won or the static
+         * evaluator favors White after them, 0 if Black, and 1/2 for an
+         * even evaluation.  My position is restored.
+         */
+        private double playout() {
+            double result = -1;
+            int made = 0;
+            while (made < PLAYOUT_PLIES) {
+                int n = _board.generateMoves(_board.turn(), _moves);
+                if (n == 0) {
+                    result = _board.turn() == WHITE ? 0 : 1;
+                    break;
+                }
+                _board.makeMove(_moves[_random.nextInt(n)]);
+                made += 1;
+            }
+            if (result < 0) {
+                int score = _eval.evaluate(_board);
+                result = score > 0 ? 1 : score < 0 ? 0 : 0.5;
+            }
+            for (; made > 0; made -= 1) {
+                _board.undo();
+            }
+            return result;
+        }
+
+        /**
+         * My copy of the position, kept at the root between iterations.
+         */
+        private final Board _board;
+
+        /**
+         * My source of random numbers.
+         */
+        private final SplittableRandom _random;
+
+        /**
+         * Evaluator for the ends of playouts.
+         */
+        private final Evaluator _eval;
+
+        /**
+         * Scratch move list.
+         */
+        private final int[] _moves = new int[Board.MAX_MOVES];
+
+        /**
+         * The nodes on the path of the current iteration, by depth.
+         */
+        private final Node[] _path = new Node[SearchOptions.MAX_DEPTH + 1];
+    }
+
+    /**
+     * Number of playouts made when there is neither a time budget nor a
+     * playout limit.
+     */
+    static final long DEFAULT_PLAYOUTS = 10_000;
+
+    /**
+     * Length of the random part of a playout.
+     */
+    private static final int PLAYOUT_PLIES = 6;
+
+    /**
+     * Weight of the exploration term of UCT.
+     */
+    private static final double EXPLORATION = 0.7;
+
+    /**
+     * Scale of the number of children a node may have.
+     */
+    private static final double WIDENING = 2.0;
+
+    /**
+     * The options controlling my searches.
+     */
+    private final SearchOptions _options;
+
+    /**
+     * Helper threads for multi-threaded searches, or null if none have
+     * been needed yet.
+     */
+    private ExecutorService _helpers;
+
+    /**
+     * Number of threads in _helpers.
+     */
+    private int _helperCount;
+
+    /**
+     * Root of the current search tree.
+     */
+    private volatile Node _root;
+
+    /**
+     * The side to move at _root.
+     */
+    private volatile Piece _rootSide;
+
+    /**
+     * Times (as from System.nanoTime) at which the current search
+     * started and must stop.
+     */
+    private volatile long _start, _deadline;
+
+    /**
+     * Most playouts the current search may make.
+     */
+    private volatile long _limit;
+
+    /**
+     * Playouts claimed so far by the current search.
+     */
+    private final AtomicLong _playouts = new AtomicLong();
+
+    /**
+     * True once the current search is to stop.
+     */
+    private volatile boolean _stopped;
+
+    /**
+     * True iff stop() has been called since the last prepareSearch().
+     */
+    private volatile boolean _stopRequested;
+
+    /**
+     * True iff prepareSearch() has been called and the search it
+     * prepared for has not yet begun.
+     */
+    private volatile boolean _prepared;
+
+    /**
+     * Duration of the last search in nanoseconds.
+     */
+    private long _elapsed;
+
+    /**
+     * Visits to the move chosen by the last search.
+     */
+    private int _bestVisits;
+
+    /**
+     * Fraction of wins for the move chosen by the last search.
+     */
+    private double _bestValue;
+}
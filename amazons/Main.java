@@ -1,10 +1,14 @@
 package amazons;
 
 import java.util.List;
+import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.nio.file.Path;
 
 import static amazons.Utils.error;
 
@@ -19,13 +23,91 @@ public class Main {
     public static void main(String... args) {
 
         CommandArgs options =
-            new CommandArgs("--display --log={0,1} --={0,2}", args);
+            new CommandArgs("--display --log={0,1} --time={0,1}"
+                            + " --threads={0,1} --eval={0,1} --mcts --ponder"
+                            + " --match={0,2} --games={0,1}"
+                            + " --parallel={0,1} --sprt={0,1}"
+                            + " --server={0,1} --book={0,1}"
+                            + " --build-book={0,1} --journal={0,1}"
+                            + " --replay={0,1} --analyze={0,1}"
+                            + " --nodes={0,1} --strategy={0,1}"
+                            + " --={0,2}",
+                            args);
         if (!options.ok()) {
             System.err.println("Usage: java amazons.Main [--display]"
-                               + " [--log=FILE] [INPUT [OUTPUT]]");
+                               + " [--log=FILE] [--time=MILLIS]"
+                               + " [--threads=N] [--strategy=NAME]"
+                               + " [--eval=NAME] [--mcts]"
+                               + " [--ponder] [--book=FILE]"
+                               + " [--journal=FILE] [INPUT [OUTPUT]]");
+            System.err.println("       java amazons.Main --match=ENGINE"
+                               + " [--match=ENGINE] [--games=N]"
+                               + " [--parallel=N] [--sprt=ELO0,ELO1]"
+                               + " [--journal=FILE]");
+            System.err.println("       java amazons.Main --server=[HOST:]PORT"
+                               + " | --server=unix:PATH");
+            System.err.println("       java amazons.Main --build-book=FILE"
+                               + " [--games=N] [--parallel=N]"
+                               + " [--time=MILLIS] [--threads=N]"
+                               + " [--eval=NAME]");
+            System.err.println("       java amazons.Main --replay=FILE");
+            System.err.println("       java amazons.Main --analyze=FILE"
+                               + " [--nodes=N] [--time=MILLIS]"
+                               + " [--parallel=N] [--threads=N]"
+                               + " [--strategy=NAME] [--eval=NAME]"
+                               + " [--book=FILE]");
             System.exit(1);
         }
 
+        if (options.contains("--server")) {
+            try {
+                new Server(value(options, "--server")).run();
+            } catch (IOException | IllegalArgumentException excp) {
+                System.err.printf("Error: %s%n", excp.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if (options.contains("--build-book")) {
+            try {
+                buildBook(options);
+                System.exit(0);
+            } catch (IOException | IllegalArgumentException excp) {
+                System.err.printf("Error: %s%n", excp.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if (options.contains("--replay")) {
+            try {
+                replay(Path.of(value(options, "--replay")));
+                System.exit(0);
+            } catch (IOException | IllegalArgumentException excp) {
+                System.err.printf("Error: %s%n", excp.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if (options.contains("--analyze")) {
+            try {
+                analyze(options);
+                System.exit(0);
+            } catch (IOException | IllegalArgumentException excp) {
+                System.err.printf("Error: %s%n", excp.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if (options.contains("--match")) {
+            try {
+                tournament(options);
+                System.exit(0);
+            } catch (IOException | IllegalArgumentException excp) {
+                System.err.printf("Error: %s%n", excp.getMessage());
+                System.exit(1);
+            }
+        }
+
         List<String> files = options.get("--");
         if (!files.isEmpty()) {
             try {
@@ -54,6 +136,143 @@ public class Main {
 
     }
 
+    /** Play the headless match described by OPTIONS: between the one or
+     *  two engines (see Tournament.Engine) given by --match, for at most
+     *  --games games (default DEFAULT_GAMES), --parallel at a time, with
+     *  the SPRT hypotheses given by --sprt, recording the games in the
+     *  journal given by --journal, if any. */
+    private static void tournament(CommandArgs options) throws IOException {
+        List<String> specs = options.get("--match");
+        Tournament.Engine a = new Tournament.Engine(specs.get(0)),
+            b = new Tournament.Engine(specs.get(specs.size() - 1));
+        int games, parallel;
+        double elo0, elo1;
+        try {
+            games = Integer.parseInt(
+                options.getFirst("--games", Integer.toString(DEFAULT_GAMES)));
+            parallel = options.contains("--parallel")
+                ? Integer.parseInt(options.getFirst("--parallel"))
+                : Tournament.defaultParallel(a, b);
+            String[] sprt = options.getFirst("--sprt", "0,10").split(",");
+            elo0 = Double.parseDouble(sprt[0]);
+            elo1 = Double.parseDouble(sprt[1]);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw error("bad tournament option");
+        }
+        Tournament match = new Tournament(a, b, games, parallel, elo0, elo1);
+        if (!options.contains("--journal")) {
+            match.run(System.out);
+            return;
+        }
+        try (GameJournal.Writer journal =
+             new GameJournal.Writer(Path.of(value(options, "--journal")))) {
+            match.setJournal(journal);
+            match.run(System.out);
+        }
+    }
+
+    /** Replay every game in the journal FILE, checking that its moves
+     *  are legal and its result correct, and print a summary. */
+    private static void replay(Path file) throws IOException {
+        long start = System.nanoTime();
+        long games = 0, moves = 0, whiteWins = 0;
+        Board board = new Board();
+        try (GameJournal.Reader journal = new GameJournal.Reader(file)) {
+            for (GameRecord game : journal) {
+                board.init();
+                for (int k = 0; k < game.length(); k += 1) {
+                    if (board.winner() != Piece.EMPTY
+                        || !board.isLegal(game.move(k))) {
+                        throw error("game %d: illegal move %d", games + 1,
+                                    k + 1);
+                    }
+                    board.makeMove(game.move(k));
+                }
+                if (game.winner() != Piece.EMPTY
+                    && board.winner() != Piece.EMPTY
+                    && game.winner() != board.winner()) {
+                    throw error("game %d: wrong result", games + 1);
+                }
+                games += 1;
+                moves += game.length();
+                if (game.winner() == Piece.WHITE) {
+                    whiteWins += 1;
+                }
+            }
+        }
+        double seconds = Math.max((System.nanoTime() - start) / 1e9, 1e-9);
+        System.out.printf("%d games, %d moves, White won %d; "
+                          + "%.0f games/s, %.0f moves/s%n", games, moves,
+                          whiteWins, games / seconds, moves / seconds);
+    }
+
+    /** Default length of a match. */
+    private static final int DEFAULT_GAMES = 1000;
+
+    /** Grow the opening book named by --build-book, as described by
+     *  OPTIONS: with --games games of self-play (default
+     *  DEFAULT_BOOK_GAMES), --parallel at a time, searched according to
+     *  the search options (see searchOptions). */
+    private static void buildBook(CommandArgs options) throws IOException {
+        int games, parallel;
+        try {
+            games = Integer.parseInt(
+                options.getFirst("--games",
+                                 Integer.toString(DEFAULT_BOOK_GAMES)));
+            parallel = Integer.parseInt(
+                options.getFirst("--parallel", Integer.toString(
+                    Runtime.getRuntime().availableProcessors())));
+        } catch (NumberFormatException excp) {
+            throw error("bad book option");
+        }
+        SearchOptions search = searchOptions(options);
+        search.setBook(null);
+        OpeningBook.build(Path.of(value(options, "--build-book")), search,
+                          games, OpeningBook.DEFAULT_PLIES, parallel,
+                          System.out);
+    }
+
+    /** Analyze the positions in the file named by --analyze ("-" for
+     *  the standard input), writing the results to the standard output
+     *  (see Analysis), as described by OPTIONS: --parallel positions at
+     *  a time, each searched for at most --nodes positions, and
+     *  according to the search options (see searchOptions).  A node
+     *  limit without a time means no time limit. */
+    private static void analyze(CommandArgs options) throws IOException {
+        SearchOptions search = searchOptions(options);
+        search.setPonder(false);
+        int parallel;
+        try {
+            if (options.contains("--nodes")) {
+                search.setMaxNodes(Long.parseLong(
+                    options.getFirst("--nodes")));
+                if (!options.contains("--time")) {
+                    search.setMoveTime(0);
+                }
+            }
+            parallel = options.contains("--parallel")
+                ? Integer.parseInt(options.getFirst("--parallel"))
+                : Analysis.defaultParallel(search);
+        } catch (NumberFormatException excp) {
+            throw error("bad analysis option");
+        }
+        String name = value(options, "--analyze");
+        Analysis analysis =
+            new Analysis(search, parallel, ANALYSIS_BUFFER * parallel);
+        try (BufferedReader input = new BufferedReader(
+                 name.equals("-") ? new InputStreamReader(System.in)
+                 : new FileReader(name))) {
+            analysis.run(input, System.out);
+        }
+    }
+
+    /** Number of positions, per position analyzed at once, that
+     *  --analyze holds awaiting output. */
+    private static final int ANALYSIS_BUFFER = 4;
+
+    /** Default number of games played by --build-book. */
+    private static final int DEFAULT_BOOK_GAMES = 100;
+
     /** Return an appropriate Controller as indicated by OPTIONS. */
     private static Controller getController(CommandArgs options) {
         Player manualPlayer;
@@ -83,6 +302,66 @@ public class Main {
             }
         }
 
-        return new Controller(view, log, reporter, manualPlayer, new AI());
+        SearchOptions search = searchOptions(options);
+        Player auto;
+        if (options.contains("--mcts")) {
+            auto = new MCTSPlayer(search);
+        } else {
+            auto = new AI(search);
+        }
+        Controller controller =
+            new Controller(view, log, reporter, manualPlayer, auto);
+        if (options.contains("--journal")) {
+            try {
+                controller.setJournal(new GameJournal.Writer(
+                    Path.of(value(options, "--journal"))));
+            } catch (IOException excp) {
+                throw error("Could not open journal: %s",
+                            excp.getMessage());
+            }
+        }
+        return controller;
+    }
+
+    /** Return the value of option NAME in OPTIONS, which must have
+     *  one. */
+    private static String value(CommandArgs options, String name) {
+        String value = options.getFirst(name);
+        if (value == null || value.isEmpty()) {
+            throw error("%s needs a value", name);
+        }
+        return value;
+    }
+
+    /** Return the SearchOptions given by --time, --threads,
+     *  --strategy, --eval, --book, and --ponder in OPTIONS. */
+    private static SearchOptions searchOptions(CommandArgs options) {
+        SearchOptions search = new SearchOptions();
+        if (options.contains("--time")) {
+            try {
+                search.setMoveTime(Long.parseLong(options.getFirst("--time")));
+            } catch (NumberFormatException excp) {
+                throw error("Bad --time value");
+            }
+        }
+        if (options.contains("--threads")) {
+            try {
+                search.setThreads(Integer.parseInt(
+                    options.getFirst("--threads")));
+            } catch (NumberFormatException excp) {
+                throw error("Bad --threads value");
+            }
+        }
+        if (options.contains("--strategy")) {
+            search.setStrategy(options.getFirst("--strategy"));
+        }
+        if (options.contains("--eval")) {
+            search.setEvaluator(options.getFirst("--eval"));
+        }
+        if (options.contains("--book")) {
+            search.set("book", options.getFirst("--book"));
+        }
+        search.setPonder(options.contains("--ponder"));
+        return search;
     }
 }
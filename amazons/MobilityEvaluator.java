@@ -0,0 +1,22 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/** An Evaluator that scores a position by the difference between the
+ *  numbers of squares White's and Black's queens can move to.  Cheap,
+ *  but blind to who will eventually own those squares.
+ *  @author Joseph Park
+ */
+class MobilityEvaluator implements Evaluator {
+
+    @Override
+    public int evaluate(Board board) {
+        return board.mobility(WHITE) - board.mobility(BLACK);
+    }
+
+    /** A few queen moves' worth of mobility. */
+    @Override
+    public int aspirationWindow() {
+        return 4;
+    }
+}
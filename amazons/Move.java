@@ -1,5 +1,6 @@
 package amazons;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
@@ -9,7 +10,12 @@ import static amazons.Square.SQ;
 /** A move in the game of Amazons. As for Squares, Moves are immutable
  *  and unique: there is only one move object for each possible move
  *  (generated by the factory method  mv, the constructor being private).
- *  As for Squares, you can freely use == to compare Moves.
+ *  As for Squares, you can freely use == to compare Moves.  Moves may be
+ *  created and used from any thread.
+ *
+ *  Inside the move generator and the search, moves are plain ints (see
+ *  code), and Move objects are only made where a move leaves the
+ *  engine: when it is reported, printed, or parsed.
  *  @author P. N. Hilfinger
  */
 final class Move {
@@ -22,6 +28,10 @@ final class Move {
         Pattern.compile(String.format("%s-%s\\(%s\\)|%s\\s+%s\\s+%s",
                                       SQ, SQ, SQ, SQ, SQ, SQ));
 
+    /** A code that denotes no move.  (It would be a1-a1(a1), which is
+     *  never legal.) */
+    static final int NONE = 0;
+
     /** Return the square moved from. */
     Square from() {
         return _from;
@@ -37,25 +47,57 @@ final class Move {
         return _spear;
     }
 
+    /** Return my packed code (see code(int, int, int)). */
+    int code() {
+        return _code;
+    }
+
+    /** Return the packed code for the move between the squares with
+     *  indices FROM, TO, and SPEAR: 7 bits each, FROM lowest, in 21 bits
+     *  in all. */
+    static int code(int from, int to, int spear) {
+        return from | (to << 7) | (spear << 14);
+    }
+
+    /** Return the index of the square moved from in move CODE. */
+    static int from(int code) {
+        return code & 0x7f;
+    }
+
+    /** Return the index of the square moved to in move CODE. */
+    static int to(int code) {
+        return (code >> 7) & 0x7f;
+    }
+
+    /** Return the index of the spear's square in move CODE. */
+    static int spear(int code) {
+        return code >> 14;
+    }
+
     /** Return the unique Move FROM-TO(SPEAR). */
     static Move mv(Square from, Square to, Square spear) {
-        if (MOVES[from.index()][to.index()][spear.index()] == null) {
-            MOVES[from.index()][to.index()][spear.index()] =
-                new Move(from, to, spear);
+        return mv(code(from.index(), to.index(), spear.index()));
+    }
+
+    /** Return the unique Move whose packed code is CODE. */
+    static Move mv(int code) {
+        Move result = MOVES.get(code);
+        if (result == null) {
+            result = MOVES.computeIfAbsent(code, Move::new);
         }
-        return MOVES[from.index()][to.index()][spear.index()];
+        return result;
     }
 
     /** Return the Move denoted by STR, if STR denotes a move with
      *  valid syntax in which the piece move and spear throw are proper
      *  queen moves, and null otherwise. */
     static Move mv(String str) {
-        _moveMatcher.reset(str);
-        if (_moveMatcher.matches()) {
-            int k = _moveMatcher.group(1) != null ? 1 : 4;
-            Square from = sq(_moveMatcher.group(k)),
-                to = sq(_moveMatcher.group(k + 1)),
-                spear = sq(_moveMatcher.group(k + 2));
+        Matcher moveMatcher = MOVE_PATTERN.matcher(str);
+        if (moveMatcher.matches()) {
+            int k = moveMatcher.group(1) != null ? 1 : 4;
+            Square from = sq(moveMatcher.group(k)),
+                to = sq(moveMatcher.group(k + 1)),
+                spear = sq(moveMatcher.group(k + 2));
             if (from.isQueenMove(to)) {
                 return mv(from, to, spear);
             }
@@ -66,29 +108,43 @@ final class Move {
     /** Return true iff STR has the right format for a Move, ignoring whether
      *  its piece-move and spear-throw are valid queen moves. */
     static boolean isGrammaticalMove(String str) {
-        _moveMatcher.reset(str);
-        return _moveMatcher.matches();
+        return MOVE_PATTERN.matcher(str).matches();
+    }
+
+    /** Return the printed form of the move with code CODE. */
+    static String toString(int code) {
+        return sq(from(code)) + "-" + sq(to(code)) + "(" + sq(spear(code))
+            + ")";
     }
 
     @Override
     public String toString() {
-        return _str;
+        String result = _str;
+        if (result == null) {
+            result = _str = toString(_code);
+        }
+        return result;
     }
 
-    /** Construct the Move FROM-TO(SPEAR). */
-    private Move(Square from, Square to, Square spear) {
-        _from = from; _to = to; _spear = spear;
-        _str = String.format("%s-%s(%s)", from, to, spear);
+    /** Construct the Move whose packed code is CODE. */
+    private Move(int code) {
+        _code = code;
+        _from = sq(from(code));
+        _to = sq(to(code));
+        _spear = sq(spear(code));
     }
 
-    /** The cache of all Moves created. */
-    private static final Move[][][] MOVES = new Move[100][100][100];
+    /** The cache of all Moves created, by code.  Only moves that have
+     *  crossed the engine's boundary are ever created, so this stays
+     *  small. */
+    private static final ConcurrentHashMap<Integer, Move> MOVES =
+        new ConcurrentHashMap<>();
 
+    /** My packed code. */
+    private final int _code;
     /** The components of a Move. */
     private final Square _from, _to, _spear;
-    /** The printed form of a Move. */
+    /** The printed form of a Move, computed when first needed.  (Racing
+     *  threads may each compute it; any of the equal results will do.) */
     private String _str;
-    /**  A utility Matcher for moves, using MOVE_PATTERN. */
-    private static Matcher _moveMatcher = MOVE_PATTERN.matcher("");
 }
-
@@ -0,0 +1,194 @@
+package amazons;
+
+import java.util.Arrays;
+
+import static amazons.Piece.*;
+
+/** The order in which one searching thread tries moves.  Moves are
+ *  taken in stages: the transposition table's move for the position,
+ *  then the killer moves for the ply (the last two moves that caused a
+ *  cutoff at that distance from the root), then the rest by decreasing
+ *  history score.  The history score of a move is kept in two parts,
+ *  one for its queen move (from-to) and one for its arrow (to-spear),
+ *  so that what is learned about a good queen move carries over to all
+ *  the arrows thrown after it, and vice versa.  Each part grows by the
+ *  square of the remaining depth whenever a move with that part causes
+ *  a cutoff.
+ *
+ *  A MoveOrdering is used by one thread, and kept from search to search
+ *  so that its history can guide the next search.
+ *  @author Joseph Park
+ */
+class MoveOrdering {
+
+    /** Prepare for a new search: forget the killer moves and halve the
+     *  history scores, so that recent searches count for more. */
+    void newSearch() {
+        for (int[] k : _killers) {
+            Arrays.fill(k, Move.NONE);
+        }
+        age();
+    }
+
+    /** Reorder MOVES[0 .. N-1], the moves for SIDE in a position at
+     *  distance PLY from the root: HASHMOVE (if it is among them), then
+     *  the killer moves for PLY, then the rest by decreasing history
+     *  score.  HASHMOVE may be Move.NONE. */
+    void order(int[] moves, int n, int hashMove, Piece side, int ply) {
+        int first = promote(moves, 0, n, hashMove);
+        for (int killer : _killers[ply]) {
+            if (killer != hashMove) {
+                first = promote(moves, first, n, killer);
+            }
+        }
+        sort(moves, first, n, side, QUEEN | ARROW);
+    }
+
+    /** Reorder MOVES[0 .. N-1], the queen moves for SIDE (as codes with
+     *  spear square 0; see Board.generateQueenMoves) in a position at
+     *  distance PLY from the root, as order does, but going by the queen
+     *  moves of HASHMOVE and the killer moves, and by the queen-move
+     *  part of the history scores alone. */
+    void orderQueenMoves(int[] moves, int n, int hashMove, Piece side,
+                         int ply) {
+        int first = promote(moves, 0, n, queenMove(hashMove));
+        for (int killer : _killers[ply]) {
+            first = promote(moves, first, n, queenMove(killer));
+        }
+        sort(moves, first, n, side, QUEEN);
+    }
+
+    /** Reorder MOVES[0 .. N-1], the moves that complete one queen move
+     *  for SIDE at distance PLY from the root (see
+     *  Board.generateSpears), as order does, but going by the arrow part
+     *  of the history scores alone. */
+    void orderSpears(int[] moves, int n, int hashMove, Piece side,
+                     int ply) {
+        int first = promote(moves, 0, n, hashMove);
+        for (int killer : _killers[ply]) {
+            first = promote(moves, first, n, killer);
+        }
+        sort(moves, first, n, side, ARROW);
+    }
+
+    /** Sort MOVES[FIRST .. N-1], moves for SIDE, by decreasing history
+     *  score, counting the parts of the score in PARTS (QUEEN, ARROW,
+     *  or both). */
+    private void sort(int[] moves, int first, int n, Piece side,
+                      int parts) {
+        int base = side == WHITE ? 0 : CELLS * CELLS;
+        int m = 0;
+        boolean any = false;
+        for (int i = first; i < n; i += 1) {
+            int mv = moves[i];
+            int score = history(base, mv, parts);
+            any |= score != 0;
+            _keys[m] = (long) score << CODE_BITS | mv;
+            m += 1;
+        }
+        if (!any) {
+            return;
+        }
+        Arrays.sort(_keys, 0, m);
+        for (int i = 0; i < m; i += 1) {
+            moves[first + i] = (int) (_keys[m - 1 - i] & CODE_MASK);
+        }
+    }
+
+    /** Record that MOVE, by SIDE at distance PLY from the root with DEPTH
+     *  plies left to search, caused a cutoff. */
+    void cutoff(int move, Piece side, int ply, int depth) {
+        int[] killers = _killers[ply];
+        if (killers[0] != move) {
+            killers[1] = killers[0];
+            killers[0] = move;
+        }
+        int base = side == WHITE ? 0 : CELLS * CELLS;
+        int from = Move.from(move), to = Move.to(move),
+            spear = Move.spear(move);
+        int q = _queenHistory[base + from * CELLS + to] += depth * depth,
+            a = _arrowHistory[base + to * CELLS + spear] += depth * depth;
+        if (q > HISTORY_LIMIT || a > HISTORY_LIMIT) {
+            age();
+        }
+    }
+
+    /** Return the history score of MOVE for SIDE. */
+    int history(int move, Piece side) {
+        return history(side == WHITE ? 0 : CELLS * CELLS, move,
+                       QUEEN | ARROW);
+    }
+
+    /** Return the queen move of MOVE: its code with the spear square
+     *  0.  Move.NONE stays Move.NONE. */
+    static int queenMove(int move) {
+        return move & QUEEN_MOVE_MASK;
+    }
+
+    /** Move MOVE, if it is present in MOVES[FIRST .. N-1], to
+     *  MOVES[FIRST], moving the move there to MOVE's old place, and
+     *  return the index after it.  Otherwise (or if MOVE is Move.NONE),
+     *  return FIRST. */
+    static int promote(int[] moves, int first, int n, int move) {
+        if (move == Move.NONE) {
+            return first;
+        }
+        for (int i = first; i < n; i += 1) {
+            if (moves[i] == move) {
+                moves[i] = moves[first];
+                moves[first] = move;
+                return first + 1;
+            }
+        }
+        return first;
+    }
+
+    /** Return the sum of the parts PARTS of the history score of MOVE
+     *  in the tables for the side whose entries start at BASE. */
+    private int history(int base, int move, int parts) {
+        int to = Move.to(move);
+        int score = 0;
+        if ((parts & QUEEN) != 0) {
+            score += _queenHistory[base + Move.from(move) * CELLS + to];
+        }
+        if ((parts & ARROW) != 0) {
+            score += _arrowHistory[base + to * CELLS + Move.spear(move)];
+        }
+        return score;
+    }
+
+    /** Halve all history scores. */
+    private void age() {
+        for (int i = 0; i < _queenHistory.length; i += 1) {
+            _queenHistory[i] >>= 1;
+            _arrowHistory[i] >>= 1;
+        }
+    }
+
+    /** The parts of a history score: that of the queen move and that of
+     *  the arrow. */
+    private static final int QUEEN = 1, ARROW = 2;
+    /** Mask selecting the queen move (from and to squares) of a move
+     *  code. */
+    private static final int QUEEN_MOVE_MASK = (1 << 14) - 1;
+    /** Number of squares. */
+    private static final int CELLS = Board.SIZE * Board.SIZE;
+    /** Number of bits in a move code. */
+    private static final int CODE_BITS = 21;
+    /** Mask selecting the move code from a sort key. */
+    private static final long CODE_MASK = (1L << CODE_BITS) - 1;
+    /** History parts are halved when one passes this limit, which keeps
+     *  their sums well within an int. */
+    private static final int HISTORY_LIMIT = 1 << 24;
+
+    /** Killer moves, two per ply. */
+    private final int[][] _killers = new int[SearchOptions.MAX_DEPTH + 1][2];
+    /** History scores of queen moves, indexed by side (White first),
+     *  then from square, then to square. */
+    private final int[] _queenHistory = new int[2 * CELLS * CELLS];
+    /** History scores of arrows, indexed by side, then the square the
+     *  queen moved to, then the spear square. */
+    private final int[] _arrowHistory = new int[2 * CELLS * CELLS];
+    /** Sort keys: history score above the move code. */
+    private final long[] _keys = new long[Board.MAX_MOVES];
+}
@@ -0,0 +1,277 @@
+package amazons;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static amazons.Piece.*;
+import static amazons.Utils.error;
+
+/** A book of opening moves, kept in a binary file that is memory-mapped
+ *  rather than read, so that opening even a large book costs nothing
+ *  until it is used.  The file holds the 8 bytes of MAGIC followed by
+ *  entries of ENTRY_BYTES bytes each:
+ *  <pre>
+ *  long key      Board.key() of the position
+ *  int  move     code (see Move.code) of a move from the position
+ *  int  weight   number of times the builder chose the move
+ *  int  score    the builder's search score for it (White-relative)
+ *  </pre>
+ *  in increasing order of key (as a signed long), and for each key in
+ *  decreasing order of weight.  A lookup is a binary search.  Books are
+ *  immutable and may be shared by any number of threads.
+ *  @author Joseph Park
+ */
+class OpeningBook {
+
+    /** First eight bytes of a book file ("AMZBOOK1"). */
+    static final long MAGIC = 0x414d5a424f4f4b31L;
+    /** Size of the header and of an entry, in bytes. */
+    static final int HEADER_BYTES = 8, ENTRY_BYTES = 20;
+    /** Default number of plies from the start covered by build. */
+    static final int DEFAULT_PLIES = 4;
+
+    /** A book whose entries are in DATA, which must be positioned at
+     *  the first entry. */
+    private OpeningBook(ByteBuffer data) {
+        _data = data;
+        _size = data.capacity() / ENTRY_BYTES;
+    }
+
+    /** Return the book in FILE, which is mapped, not read. */
+    static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            long length = channel.size();
+            if (length < HEADER_BYTES
+                || (length - HEADER_BYTES) % ENTRY_BYTES != 0
+                || length > Integer.MAX_VALUE) {
+                throw error("%s is not an opening book", file);
+            }
+            ByteBuffer data =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (data.getLong(0) != MAGIC) {
+                throw error("%s is not an opening book", file);
+            }
+            return new OpeningBook(data.position(HEADER_BYTES).slice());
+        }
+    }
+
+    /** Return the number of entries in me. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the code of my best-weighted move that is legal in BOARD
+     *  for the side to move, or Move.NONE if there is none.  Moves are
+     *  checked, since different positions may have equal keys. */
+    int probe(Board board) {
+        long key = board.key();
+        for (int i = find(key); i < _size && key(i) == key; i += 1) {
+            int move = move(i);
+            if (board.get(Square.sq(Move.from(move))) == board.turn()
+                && board.isLegal(move)) {
+                return move;
+            }
+        }
+        return Move.NONE;
+    }
+
+    /** Return the index of the first of my entries whose key is at
+     *  least KEY (_size if none). */
+    private int find(long key) {
+        int lo = 0, hi = _size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return the key of my entry #I. */
+    private long key(int i) {
+        return _data.getLong(i * ENTRY_BYTES);
+    }
+
+    /** Return the move of my entry #I. */
+    private int move(int i) {
+        return _data.getInt(i * ENTRY_BYTES + 8);
+    }
+
+    /** Return the weight of my entry #I. */
+    private int weight(int i) {
+        return _data.getInt(i * ENTRY_BYTES + 12);
+    }
+
+    /** Return the score of my entry #I. */
+    private int score(int i) {
+        return _data.getInt(i * ENTRY_BYTES + 16);
+    }
+
+    /** Grow the book in FILE (creating it if it does not exist) by
+     *  playing GAMES games of self-play, PARALLEL at a time, as far as
+     *  PLIES plies from the start, and report the result on OUT.  Each
+     *  position reached that is not yet in the book is searched by an
+     *  AI using OPTIONS, and its move added; a position already there
+     *  has the weight of its best move increased, and that move is
+     *  played.  To vary the games, game number G instead plays a random
+     *  move at ply G % PLIES; games are numbered from the number of
+     *  positions already in the book, so that successive builds play
+     *  different games.  The new book replaces FILE only when it is
+     *  complete. */
+    static void build(Path file, SearchOptions options, int games,
+                      int plies, int parallel, PrintStream out)
+        throws IOException {
+        if (games < 1 || plies < 1 || parallel < 1) {
+            throw error("bad book parameters");
+        }
+        Map<Long, List<int[]>> entries = new HashMap<>();
+        if (Files.exists(file)) {
+            OpeningBook old = open(file);
+            for (int i = 0; i < old._size; i += 1) {
+                entries.computeIfAbsent(old.key(i), k -> new ArrayList<>())
+                    .add(new int[] { old.move(i), old.weight(i),
+                                     old.score(i) });
+            }
+        }
+        int initial = entries.size();
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(parallel);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < parallel; i += 1) {
+            workers.add(pool.submit(() -> {
+                AI[] players = { new AI(WHITE, null, options),
+                                 new AI(BLACK, null, options) };
+                for (int g = next.getAndIncrement(); g < games;
+                     g = next.getAndIncrement()) {
+                    selfPlay(initial + g, plies, players, entries);
+                }
+            }));
+        }
+        pool.shutdown();
+        try {
+            for (Future<?> f : workers) {
+                f.get();
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        int size = write(temp, entries);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        out.printf("%s: %d positions (%d new), %d entries%n", file,
+                   entries.size(), entries.size() - initial, size);
+    }
+
+    /** Play the first PLIES plies of book-building game number GAME with
+     *  PLAYERS (White's and Black's AIs) and record the results in
+     *  ENTRIES, which maps keys to lists of {move, weight, score}. */
+    private static void selfPlay(int game, int plies, AI[] players,
+                                 Map<Long, List<int[]>> entries) {
+        Random random = new Random(game);
+        Board board = new Board();
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int ply = 0; ply < plies && board.winner() == EMPTY;
+             ply += 1) {
+            long key = board.key();
+            int[] best;
+            synchronized (entries) {
+                best = bestEntry(entries.get(key));
+            }
+            if (best == null) {
+                AI player = players[board.turn() == WHITE ? 0 : 1];
+                int move = player.findMove(board).code();
+                synchronized (entries) {
+                    best = bestEntry(entries.get(key));
+                    if (best == null) {
+                        best = new int[] { move, 0, player.score() };
+                        entries.computeIfAbsent(key,
+                                                k -> new ArrayList<>())
+                            .add(best);
+                    }
+                }
+            }
+            synchronized (entries) {
+                best[1] += 1;
+            }
+            int move = best[0];
+            if (ply == game % plies) {
+                int n = board.generateMoves(board.turn(), moves);
+                move = moves[random.nextInt(n)];
+            }
+            board.makeMove(move);
+        }
+    }
+
+    /** Return the entry of highest weight in ENTRIES, or null if
+     *  ENTRIES is null or empty. */
+    private static int[] bestEntry(List<int[]> entries) {
+        int[] best = null;
+        if (entries != null) {
+            for (int[] entry : entries) {
+                if (best == null || entry[1] > best[1]) {
+                    best = entry;
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Write ENTRIES (as for selfPlay) to FILE as a book, and return
+     *  the number of entries written. */
+    private static int write(Path file, Map<Long, List<int[]>> entries)
+        throws IOException {
+        Long[] keys = entries.keySet().toArray(new Long[0]);
+        Arrays.sort(keys);
+        int size = 0;
+        for (List<int[]> list : entries.values()) {
+            size += list.size();
+        }
+        ByteBuffer data =
+            ByteBuffer.allocate(HEADER_BYTES + size * ENTRY_BYTES);
+        data.putLong(MAGIC);
+        for (long key : keys) {
+            List<int[]> list = entries.get(key);
+            list.sort((a, b) -> Integer.compare(b[1], a[1]));
+            for (int[] entry : list) {
+                data.putLong(key).putInt(entry[0]).putInt(entry[1])
+                    .putInt(entry[2]);
+            }
+        }
+        data.flip();
+        try (FileChannel channel =
+             FileChannel.open(file, StandardOpenOption.CREATE,
+                              StandardOpenOption.WRITE,
+                              StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+        return size;
+    }
+
+    /** My entries. */
+    private final ByteBuffer _data;
+    /** Number of my entries. */
+    private final int _size;
+}
@@ -0,0 +1,185 @@
+package amazons;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/** Counts of the leaves of the legal-move tree ("perft"), used to check
+ *  Board's move generator and to measure its speed.
+ *  @author Joseph Park
+ */
+final class Perft {
+
+    /** Not instantiable. */
+    private Perft() {
+    }
+
+    /** Return the number of leaves of the legal-move tree of depth DEPTH
+     *  rooted at the current position of BOARD.  BOARD is restored
+     *  before returning. */
+    static long perft(Board board, int depth) {
+        return perft(board, depth, new int[depth + 1][], false);
+    }
+
+    /** Return perft(BOARD, DEPTH), but counting the moves at the last
+     *  ply with Board.legalMoveCount instead of generating them.  This
+     *  is faster, but does not check the generator at that ply. */
+    static long countedPerft(Board board, int depth) {
+        return perft(board, depth, new int[depth + 1][], true);
+    }
+
+    /** Return perft(BOARD, DEPTH), using MOVES[k] (allocated if null)
+     *  as the move list at remaining depth k, and counting the last
+     *  ply's moves without generating them iff COUNTED. */
+    private static long perft(Board board, int depth, int[][] moves,
+                              boolean counted) {
+        if (depth == 0) {
+            return 1;
+        }
+        if (depth == 1 && counted) {
+            return board.legalMoveCount(board.turn());
+        }
+        if (moves[depth] == null) {
+            moves[depth] = new int[Board.MAX_MOVES];
+        }
+        int[] list = moves[depth];
+        int n = board.generateMoves(board.turn(), list);
+        if (depth == 1) {
+            return n;
+        }
+        long nodes = 0;
+        for (int i = 0; i < n; i += 1) {
+            board.makeMove(list[i]);
+            nodes += perft(board, depth - 1, moves, counted);
+            board.undo();
+        }
+        return nodes;
+    }
+
+    /** Return the perft count to depth DEPTH - 1 after each legal move
+     *  from the current position of BOARD, in move-generation order.
+     *  Uses THREADS worker threads if THREADS > 1, each root move being
+     *  counted on its own copy of BOARD.  DEPTH must be positive. */
+    static Map<Move, Long> divide(Board board, int depth, int threads) {
+        List<Move> roots = new ArrayList<>();
+        Iterator<Move> moves = board.legalMoves();
+        while (moves.hasNext()) {
+            roots.add(moves.next());
+        }
+        Map<Move, Long> result = new LinkedHashMap<>();
+        if (threads <= 1) {
+            for (Move mv : roots) {
+                board.makeMove(mv);
+                result.put(mv, perft(board, depth - 1));
+                board.undo();
+            }
+            return result;
+        }
+        List<RootTask> tasks = new ArrayList<>();
+        Board.Position root = board.snapshot();
+        for (Move mv : roots) {
+            tasks.add(new RootTask(root, mv, depth - 1));
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(ForkJoinTask.adapt(() ->
+                ForkJoinTask.invokeAll(tasks)));
+        } finally {
+            pool.shutdown();
+        }
+        for (RootTask task : tasks) {
+            result.put(task._move, task.join());
+        }
+        return result;
+    }
+
+    /** Return the sum of the counts in DIVIDED. */
+    static long total(Map<Move, Long> divided) {
+        long sum = 0;
+        for (long n : divided.values()) {
+            sum += n;
+        }
+        return sum;
+    }
+
+    /** Return a one-line summary of a perft count of NODES to depth DEPTH
+     *  that took NANOS nanoseconds. */
+    static String summary(int depth, long nodes, long nanos) {
+        double secs = Math.max(nanos, 1) / 1e9;
+        return String.format("perft(%d) = %d  (%.3f s, %.0f nodes/s)",
+                             depth, nodes, secs, nodes / secs);
+    }
+
+    /** The perft count below one root move, on a private board. */
+    private static class RootTask extends RecursiveTask<Long> {
+
+        /** A task counting leaves to depth DEPTH after MOVE is made in
+         *  ROOT.  The task makes its own Board from ROOT when it runs. */
+        RootTask(Board.Position root, Move move, int depth) {
+            _root = root;
+            _move = move;
+            _depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            Board board = new Board(_root);
+            board.makeMove(_move);
+            return perft(board, _depth);
+        }
+
+        /** The position before my move. */
+        private final Board.Position _root;
+        /** The root move I count below. */
+        private final Move _move;
+        /** Remaining depth. */
+        private final int _depth;
+    }
+
+    /** Run perft from the initial position.  ARGS are DEPTH, optionally
+     *  followed by "divide" and/or a thread count, or by "count" to
+     *  count the last ply (see countedPerft). */
+    public static void main(String... args) {
+        if (args.length < 1) {
+            System.err.println("Usage: java amazons.Perft DEPTH"
+                               + " [count | [divide] [THREADS]]");
+            System.exit(1);
+        }
+        int depth = Integer.parseInt(args[0]);
+        boolean divide = false, counted = false;
+        int threads = 1;
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].equals("divide")) {
+                divide = true;
+            } else if (args[i].equals("count")) {
+                counted = true;
+            } else {
+                threads = Integer.parseInt(args[i]);
+            }
+        }
+        Board board = new Board();
+        long start = System.nanoTime();
+        long nodes;
+        if (depth == 0) {
+            nodes = 1;
+        } else if (counted) {
+            nodes = countedPerft(board, depth);
+        } else if (!divide && threads <= 1) {
+            nodes = perft(board, depth);
+        } else {
+            Map<Move, Long> counts = divide(board, depth, threads);
+            if (divide) {
+                for (Map.Entry<Move, Long> e : counts.entrySet()) {
+                    System.out.printf("%s: %d%n", e.getKey(), e.getValue());
+                }
+            }
+            nodes = total(counts);
+        }
+        System.out.println(summary(depth, nodes, System.nanoTime() - start));
+    }
+}
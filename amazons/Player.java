@@ -36,6 +36,50 @@ abstract class Player {
      *  is not null. */
     abstract String myMove();
 
+    /** Return the options controlling my searches, or null if I do not
+     *  search. */
+    SearchOptions options() {
+        return null;
+    }
+
+    /** Return a move for the side to move in POSITION, which must have a
+     *  move, without modifying POSITION, or null if I do not search.
+     *  This is for use without a Controller. */
+    Move findMove(Board position) {
+        return null;
+    }
+
+    /** Ask the search I am doing in another thread, if any, to finish
+     *  as soon as it can. */
+    void stop() {
+    }
+
+    /** Prepare for a search by findMove that is about to be started in
+     *  another thread, so that a stop() from now on ends that search,
+     *  even if it arrives before the search begins.  Must be called on
+     *  the thread that will call stop(). */
+    void prepareSearch() {
+    }
+
+    /** Prepare to play a new game, forgetting anything I have learned
+     *  from earlier ones. */
+    void newGame() {
+    }
+
+    /** Return a measure of the work done by my last search (positions
+     *  visited, or playouts for a Monte Carlo search), or 0 if I do not
+     *  search. */
+    long nodes() {
+        return 0;
+    }
+
+    /** Return a summary of my last search, or null if I do not
+     *  search or have not searched yet.  May be called from a thread
+     *  other than the one that searches. */
+    String statistics() {
+        return null;
+    }
+
     /** My Controller. */
     protected Controller _controller;
     /** The Piece I play (WHITE or BLACK). */
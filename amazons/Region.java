@@ -0,0 +1,77 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/** A region of a Board, as returned by Board.regions(): a maximal set of
+ *  squares without spears connected by king moves, together with the
+ *  number of queens of each color on it.  Regions are immutable
+ *  snapshots; they do not change when the board does.
+ *  @author Joseph Park
+ */
+final class Region {
+
+    /** A region consisting of the squares in the mask LO, HI (as for
+     *  Board), holding WHITE white queens and BLACK black ones. */
+    Region(long lo, long hi, int white, int black) {
+        _lo = lo;
+        _hi = hi;
+        _white = white;
+        _black = black;
+    }
+
+    /** Return the LO word of my mask of squares. */
+    long lo() {
+        return _lo;
+    }
+
+    /** Return the HI word of my mask of squares. */
+    long hi() {
+        return _hi;
+    }
+
+    /** Return true iff I include the square with index K. */
+    boolean contains(int k) {
+        return k < 64 ? (_lo & (1L << k)) != 0
+            : (_hi & (1L << (k - 64))) != 0;
+    }
+
+    /** Return the number of my squares. */
+    int size() {
+        return Long.bitCount(_lo) + Long.bitCount(_hi);
+    }
+
+    /** Return the number of my empty squares. */
+    int emptySquares() {
+        return size() - _white - _black;
+    }
+
+    /** Return the number of SIDE's queens on me. */
+    int queens(Piece side) {
+        return side == WHITE ? _white : _black;
+    }
+
+    /** Return true iff I hold queens of both colors. */
+    boolean contested() {
+        return _white > 0 && _black > 0;
+    }
+
+    /** Return the color of the only queens on me: WHITE or BLACK if I
+     *  hold queens of just that color, EMPTY if I hold none, and null if
+     *  I am contested. */
+    Piece owner() {
+        if (contested()) {
+            return null;
+        } else if (_white > 0) {
+            return WHITE;
+        } else if (_black > 0) {
+            return BLACK;
+        } else {
+            return EMPTY;
+        }
+    }
+
+    /** My squares. */
+    private final long _lo, _hi;
+    /** Numbers of white and black queens on me. */
+    private final int _white, _black;
+}
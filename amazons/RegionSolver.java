@@ -0,0 +1,184 @@
+package amazons;
+
+import java.util.HashMap;
+
+import static amazons.Piece.*;
+
+/** An exact solver for the "filling" problem of a region held by one
+ *  side: the most moves that side can make in the region, given that
+ *  nothing outside it can interfere.  The region's squares are numbered
+ *  0 .. k-1, and a position in it is a pair of k-bit masks, the empty
+ *  squares and the queens.  The best count for each position reached
+ *  is memoized, and a position whose count equals its number of empty
+ *  squares (the most possible) cuts the search short.
+ *
+ *  The search is exponential in the worst case, so it is only tried on
+ *  regions of at most MAX_SQUARES squares, and gives up after examining
+ *  MAX_POSITIONS positions.
+ *  @author Joseph Park
+ */
+class RegionSolver {
+
+    /** Largest region attempted. */
+    static final int MAX_SQUARES = 30;
+    /** Most positions examined before giving up. */
+    static final int MAX_POSITIONS = 200_000;
+
+    /** A solver for REGION of BOARD, which must have queens of only one
+     *  color. */
+    RegionSolver(Board board, Region region) {
+        _owner = region.owner();
+        _size = region.size();
+        if (_owner == null) {
+            throw Utils.error("region is contested");
+        }
+        if (_size > MAX_SQUARES) {
+            _squares = null;
+            _rays = null;
+            return;
+        }
+        _squares = new int[_size];
+        int[] local = new int[Board.SIZE * Board.SIZE];
+        for (int k = 0, i = 0; k < local.length; k += 1) {
+            local[k] = -1;
+            if (region.contains(k)) {
+                local[k] = i;
+                _squares[i] = k;
+                i += 1;
+            }
+        }
+        _rays = new int[_size][8][];
+        for (int i = 0; i < _size; i += 1) {
+            for (int dir = 0; dir < 8; dir += 1) {
+                int[] ray = new int[Board.SIZE];
+                int n = 0;
+                for (Square sq = Square.sq(_squares[i]).queenMove(dir, 1);
+                     sq != null && local[sq.index()] >= 0;
+                     sq = sq.queenMove(dir, 1)) {
+                    ray[n] = local[sq.index()];
+                    n += 1;
+                }
+                _rays[i][dir] = java.util.Arrays.copyOf(ray, n);
+            }
+        }
+        for (int i = 0; i < _size; i += 1) {
+            Piece p = board.get(Square.sq(_squares[i]));
+            if (p == EMPTY) {
+                _empty |= 1L << i;
+            } else if (p == _owner) {
+                _queens |= 1L << i;
+            }
+        }
+    }
+
+    /** Return the most moves the owner can make in the region, or -1 if
+     *  the region is too large or the search gives up. */
+    int solve() {
+        if (!_solved) {
+            _solved = true;
+            if (_squares != null) {
+                try {
+                    _value = solve(_empty, _queens);
+                    _best = _bestFirst;
+                } catch (GiveUp excp) {
+                    _value = -1;
+                }
+            }
+        }
+        return _value;
+    }
+
+    /** Return the code of a first move of a longest sequence of moves in
+     *  the region, or Move.NONE if there is none or solve() fails. */
+    int bestMove() {
+        solve();
+        return _best;
+    }
+
+    /** Return the number of positions examined. */
+    int positions() {
+        return _memo.size();
+    }
+
+    /** Return the most moves from the position with empty squares EMPTY
+     *  and queens QUEENS (local masks).  At the top level, also records
+     *  the first move of the best line in _bestFirst. */
+    private int solve(long empty, long queens) {
+        boolean top = _memo.isEmpty();
+        long key = empty | queens << _size;
+        Integer known = _memo.get(key);
+        if (known != null) {
+            return known;
+        }
+        if (_memo.size() >= MAX_POSITIONS) {
+            throw new GiveUp();
+        }
+        _memo.put(key, 0);
+        int limit = Long.bitCount(empty), best = 0;
+        search:
+        for (long qs = queens; qs != 0; qs &= qs - 1) {
+            int q = Long.numberOfTrailingZeros(qs);
+            for (int[] ray : _rays[q]) {
+                for (int to : ray) {
+                    if ((empty & (1L << to)) == 0) {
+                        break;
+                    }
+                    long after = (empty | 1L << q) & ~(1L << to);
+                    for (int[] spearRay : _rays[to]) {
+                        for (int spear : spearRay) {
+                            if ((after & (1L << spear)) == 0) {
+                                break;
+                            }
+                            int value = 1 + solve(after & ~(1L << spear),
+                                                  queens & ~(1L << q)
+                                                  | 1L << to);
+                            if (value > best) {
+                                best = value;
+                                if (top) {
+                                    _bestFirst =
+                                        Move.code(_squares[q], _squares[to],
+                                                  _squares[spear]);
+                                }
+                                if (best == limit) {
+                                    break search;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        _memo.put(key, best);
+        return best;
+    }
+
+    /** Signals that the search has examined too many positions. */
+    private static class GiveUp extends RuntimeException {
+        /** A GiveUp without a stack trace, which is not needed. */
+        GiveUp() {
+            super(null, null, false, false);
+        }
+    }
+
+    /** The color of the queens in the region. */
+    private final Piece _owner;
+    /** Number of squares in the region. */
+    private final int _size;
+    /** Board index of each local square, or null if too large. */
+    private final int[] _squares;
+    /** _rays[i][d] lists the local squares beyond local square i in
+     *  direction d, as far as the region extends. */
+    private final int[][][] _rays;
+    /** The initial empty squares and queens, as local masks. */
+    private long _empty, _queens;
+    /** Best counts of the positions seen. */
+    private final HashMap<Long, Integer> _memo = new HashMap<>();
+    /** True once solve() has run. */
+    private boolean _solved;
+    /** Result of solve(). */
+    private int _value = -1;
+    /** First move of the best line found at the top level. */
+    private int _bestFirst = Move.NONE;
+    /** Result of bestMove(). */
+    private int _best = Move.NONE;
+}
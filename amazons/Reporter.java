@@ -16,5 +16,11 @@ interface Reporter {
     /** Display MOVE as needed. */
     void reportMove(Move move);
 
+    /** Report STATS, describing the search by which SIDE's automated
+     *  player chose the move about to be reported.  By default, does
+     *  nothing. */
+    default void reportStats(Piece side, SearchStats stats) {
+    }
+
 }
 
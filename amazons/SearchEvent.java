@@ -0,0 +1,102 @@
+package amazons;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.Timespan;
+
+/** A JDK Flight Recorder event for one move chosen by an AI, so that a
+ *  recording (java -XX:StartFlightRecording ...) shows what each search
+ *  did without a debugger.  The event's duration is the search's.
+ *  @author Joseph Park
+ */
+@Name("amazons.Search")
+@Label("Amazons Search")
+@Category("Amazons")
+@Description("A search for one move")
+class SearchEvent extends Event {
+
+    /** Record the results of a search by SIDE that chose MOVE by SOURCE
+     *  ("search", "ponder", "book", or "solver"), as described by
+     *  STATS, expecting the principal variation PV, and commit the event
+     *  if it is enabled. */
+    void finish(Piece side, Move move, String source, SearchStats stats,
+                String pv) {
+        if (!shouldCommit()) {
+            return;
+        }
+        this.side = side.toName();
+        this.move = move.toString();
+        this.source = source;
+        this.pv = pv;
+        depth = stats.depth();
+        nodes = stats.nodes();
+        nodesPerSecond = (long) stats.nodesPerSecond();
+        cutoffRate = stats.cutoffRate();
+        firstMoveCutoffRate = stats.firstMoveCutoffRate();
+        branchingFactor = stats.branchingFactor();
+        researches = stats.researches();
+        generationTime = stats.generationNanos();
+        evaluationTime = stats.evaluationNanos();
+        commit();
+    }
+
+    /** The side that searched. */
+    @Label("Side")
+    private String side;
+
+    /** The move chosen. */
+    @Label("Move")
+    private String move;
+
+    /** How the move was chosen. */
+    @Label("Source")
+    private String source;
+
+    /** The line of play expected. */
+    @Label("Principal Variation")
+    private String pv;
+
+    /** Depth of the deepest completed iteration. */
+    @Label("Depth")
+    private int depth;
+
+    /** Positions visited. */
+    @Label("Nodes")
+    private long nodes;
+
+    /** Positions visited per second. */
+    @Label("Nodes per Second")
+    private long nodesPerSecond;
+
+    /** Fraction of searched positions ending in a beta cutoff. */
+    @Label("Cutoff Rate")
+    @Percentage
+    private double cutoffRate;
+
+    /** Fraction of cutoffs caused by the first move tried. */
+    @Label("First-Move Cutoff Rate")
+    @Percentage
+    private double firstMoveCutoffRate;
+
+    /** Effective branching factor. */
+    @Label("Branching Factor")
+    private double branchingFactor;
+
+    /** Positions searched again with a wider window. */
+    @Label("Re-searches")
+    private long researches;
+
+    /** Time spent generating moves, over all threads. */
+    @Label("Move Generation Time")
+    @Timespan
+    private long generationTime;
+
+    /** Time spent evaluating positions, over all threads. */
+    @Label("Evaluation Time")
+    @Timespan
+    private long evaluationTime;
+}
@@ -0,0 +1,362 @@
+package amazons;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/** Settings that control how an AI searches.  An AI template and all the
+ *  players created from it share one SearchOptions, so changing it
+ *  affects the players of a game in progress.
+ *  @author Joseph Park
+ */
+class SearchOptions {
+
+    /** Default per-move time budget, in milliseconds. */
+    static final long DEFAULT_MOVE_TIME = 3000;
+
+    /** Largest useful search depth: a game cannot last longer than the
+     *  number of squares. */
+    static final int MAX_DEPTH = Board.SIZE * Board.SIZE;
+
+    /** Names of the parallel search strategies, as accepted by
+     *  setStrategy: "smp", in which threads search the whole tree
+     *  independently, sharing a transposition table, and "ybwc", in
+     *  which they split the tree by young-brothers-wait (see AI). */
+    static final String[] STRATEGIES = { "smp", "ybwc" };
+
+    /** Largest transposition table, in megabytes. */
+    static final int MAX_TABLE_MB = 1 << 10;
+
+    /** Return the per-move time budget in milliseconds, or 0 if the
+     *  search is limited only by maxDepth(). */
+    synchronized long moveTime() {
+        return _moveTime;
+    }
+
+    /** Set the per-move time budget to MILLIS milliseconds (0 for no
+     *  time limit). */
+    synchronized void setMoveTime(long millis) {
+        if (millis < 0) {
+            throw Utils.error("move time must not be negative");
+        }
+        _moveTime = millis;
+    }
+
+    /** Return the deepest iteration the search will attempt. */
+    synchronized int maxDepth() {
+        return _maxDepth;
+    }
+
+    /** Limit the search to DEPTH plies, 1 <= DEPTH <= MAX_DEPTH. */
+    synchronized void setMaxDepth(int depth) {
+        if (depth < 1 || depth > MAX_DEPTH) {
+            throw Utils.error("depth must be between 1 and %d", MAX_DEPTH);
+        }
+        _maxDepth = depth;
+    }
+
+    /** Return the most positions a search visits, or 0 if it is limited
+     *  only by moveTime() and maxDepth(). */
+    synchronized long maxNodes() {
+        return _maxNodes;
+    }
+
+    /** Limit searches to about N positions (0 for no limit).  The
+     *  limit is checked by the controlling thread against its own count,
+     *  so a multi-threaded search visits more. */
+    synchronized void setMaxNodes(long n) {
+        if (n < 0) {
+            throw Utils.error("node limit must not be negative");
+        }
+        _maxNodes = n;
+    }
+
+    /** Return the number of threads a search uses. */
+    synchronized int threads() {
+        return _threads;
+    }
+
+    /** Search with N threads, N >= 1. */
+    synchronized void setThreads(int n) {
+        if (n < 1) {
+            throw Utils.error("thread count must be positive");
+        }
+        _threads = n;
+    }
+
+    /** Return the name of the parallel search strategy (one of
+     *  STRATEGIES). */
+    synchronized String strategy() {
+        return _strategy;
+    }
+
+    /** Search in parallel by the strategy called NAME. */
+    synchronized void setStrategy(String name) {
+        if (!Arrays.asList(STRATEGIES).contains(name)) {
+            throw Utils.error("unknown search strategy: %s", name);
+        }
+        _strategy = name;
+    }
+
+    /** Return the name of the static evaluator (one of Evaluator.NAMES)
+     *  the search uses. */
+    synchronized String evaluator() {
+        return _evaluator;
+    }
+
+    /** Evaluate positions with the Evaluator called NAME. */
+    synchronized void setEvaluator(String name) {
+        Evaluator.create(name);
+        _evaluator = name;
+    }
+
+    /** Return the percentage weights of the territory evaluator's terms
+     *  T1, T2, C1, and C2 in the opening (see TerritoryEvaluator). */
+    synchronized int[] openingWeights() {
+        return _openingWeights.clone();
+    }
+
+    /** Weight the territory evaluator's terms by WEIGHTS in the
+     *  opening: TerritoryEvaluator.TERMS percentages, none negative. */
+    synchronized void setOpeningWeights(int... weights) {
+        _openingWeights = checkWeights(weights);
+    }
+
+    /** Return the percentage weights of the territory evaluator's terms
+     *  in the endgame, as for openingWeights. */
+    synchronized int[] endgameWeights() {
+        return _endgameWeights.clone();
+    }
+
+    /** Weight the territory evaluator's terms by WEIGHTS in the
+     *  endgame, as for setOpeningWeights. */
+    synchronized void setEndgameWeights(int... weights) {
+        _endgameWeights = checkWeights(weights);
+    }
+
+    /** Return a copy of WEIGHTS, after checking that they are valid
+     *  weights for the territory evaluator. */
+    private static int[] checkWeights(int[] weights) {
+        if (weights.length != TerritoryEvaluator.TERMS) {
+            throw Utils.error("need %d territory weights",
+                              TerritoryEvaluator.TERMS);
+        }
+        for (int w : weights) {
+            if (w < 0) {
+                throw Utils.error("territory weight must not be negative");
+            }
+        }
+        return weights.clone();
+    }
+
+    /** Return the most playouts a Monte Carlo search makes, or 0 if it
+     *  is limited only by moveTime(). */
+    synchronized long playouts() {
+        return _playouts;
+    }
+
+    /** Limit Monte Carlo searches to N playouts (0 for no limit). */
+    synchronized void setPlayouts(long n) {
+        if (n < 0) {
+            throw Utils.error("playout limit must not be negative");
+        }
+        _playouts = n;
+    }
+
+    /** Return true iff the search orders moves by the killer and
+     *  history heuristics (see MoveOrdering), rather than taking them
+     *  as generated after the transposition table's move. */
+    synchronized boolean ordering() {
+        return _ordering;
+    }
+
+    /** Turn move ordering on iff ON. */
+    synchronized void setOrdering(boolean on) {
+        _ordering = on;
+    }
+
+    /** Return true iff the search treats the queen move and the spear
+     *  throw of each move as separate half-plies (see AI), rather than
+     *  searching whole moves. */
+    synchronized boolean splitPly() {
+        return _splitPly;
+    }
+
+    /** Search by half-plies iff ON. */
+    synchronized void setSplitPly(boolean on) {
+        _splitPly = on;
+    }
+
+    /** Return the spear limits of the search: at a position other than
+     *  the root with D plies left to search, each queen move is tried
+     *  with only its K most promising spears (see Board.generateMoves),
+     *  where K is element D - 1 of the result, or its last element if
+     *  it has fewer than D.  K = 0 means all spears, as does an empty
+     *  result, which is the default. */
+    synchronized int[] arrowLimits() {
+        return _arrowLimits.clone();
+    }
+
+    /** Set the spear limits to LIMITS (see arrowLimits), which must not
+     *  be negative. */
+    synchronized void setArrowLimits(int... limits) {
+        for (int k : limits) {
+            if (k < 0) {
+                throw Utils.error("spear limit must not be negative");
+            }
+        }
+        _arrowLimits = limits.clone();
+    }
+
+    /** Return true iff an AI that has moved goes on searching the
+     *  position it expects after its opponent's reply. */
+    synchronized boolean ponder() {
+        return _ponder;
+    }
+
+    /** Turn pondering on iff ON. */
+    synchronized void setPonder(boolean on) {
+        _ponder = on;
+    }
+
+    /** Return the size in entries of the transposition table of each
+     *  AI created from now on. */
+    synchronized int tableSize() {
+        return _tableSize;
+    }
+
+    /** Give the transposition table of each AI created from now on
+     *  about MEGABYTES megabytes, 1 <= MEGABYTES <= MAX_TABLE_MB. */
+    synchronized void setTableMegabytes(int megabytes) {
+        if (megabytes < 1 || megabytes > MAX_TABLE_MB) {
+            throw Utils.error("hash must be between 1 and %d megabytes",
+                              MAX_TABLE_MB);
+        }
+        _tableSize = (megabytes << 20) / TranspositionTable.ENTRY_BYTES;
+    }
+
+    /** Return the opening book consulted before searching, or null if
+     *  none. */
+    synchronized OpeningBook book() {
+        return _book;
+    }
+
+    /** Consult BOOK (null for none) before searching. */
+    synchronized void setBook(OpeningBook book) {
+        _book = book;
+    }
+
+    /** Set the option called NAME to VALUE, both given as text: "time"
+     *  (milliseconds), "depth", "nodes", "threads", "strategy", "eval",
+     *  "playouts", "arrows" (the spear limits, separated by commas, or
+     *  "all"), "ordering", "split", or "ponder" ("on" or "off"), "hash"
+     *  (megabytes of transposition table), "territory.opening" or
+     *  "territory.endgame" (the territory evaluator's weights, separated
+     *  by commas), or "book" (the file of an OpeningBook, or
+     *  "none"). */
+    void set(String name, String value) {
+        try {
+            switch (name) {
+            case "time":
+                setMoveTime(Long.parseLong(value));
+                break;
+            case "depth":
+                setMaxDepth(Integer.parseInt(value));
+                break;
+            case "nodes":
+                setMaxNodes(Long.parseLong(value));
+                break;
+            case "threads":
+                setThreads(Integer.parseInt(value));
+                break;
+            case "strategy":
+                setStrategy(value);
+                break;
+            case "eval":
+                setEvaluator(value);
+                break;
+            case "playouts":
+                setPlayouts(Long.parseLong(value));
+                break;
+            case "arrows":
+                setArrowLimits(value.equals("all") ? new int[0]
+                               : ints(value));
+                break;
+            case "territory.opening":
+                setOpeningWeights(ints(value));
+                break;
+            case "territory.endgame":
+                setEndgameWeights(ints(value));
+                break;
+            case "ordering":
+                setOrdering(onOff(name, value));
+                break;
+            case "split":
+                setSplitPly(onOff(name, value));
+                break;
+            case "ponder":
+                setPonder(onOff(name, value));
+                break;
+            case "hash":
+                setTableMegabytes(Integer.parseInt(value));
+                break;
+            case "book":
+                setBook(value.equals("none") ? null
+                        : OpeningBook.open(Path.of(value)));
+                break;
+            default:
+                throw Utils.error("unknown option: %s", name);
+            }
+        } catch (NumberFormatException excp) {
+            throw Utils.error("bad value for %s: %s", name, value);
+        } catch (IOException excp) {
+            throw Utils.error("could not open %s: %s", value,
+                              excp.getMessage());
+        }
+    }
+
+    /** Return the integers in VALUE, which are separated by commas. */
+    private static int[] ints(String value) {
+        return Arrays.stream(value.split(","))
+            .mapToInt(Integer::parseInt).toArray();
+    }
+
+    /** Return true iff VALUE, the value given for option NAME, is "on",
+     *  and false iff it is "off". */
+    private static boolean onOff(String name, String value) {
+        if (!value.equals("on") && !value.equals("off")) {
+            throw Utils.error("%s must be on or off", name);
+        }
+        return value.equals("on");
+    }
+
+    /** Per-move time budget in milliseconds; 0 means unlimited. */
+    private long _moveTime = DEFAULT_MOVE_TIME;
+    /** Depth limit. */
+    private int _maxDepth = MAX_DEPTH;
+    /** Node limit; 0 means unlimited. */
+    private long _maxNodes;
+    /** Number of search threads. */
+    private int _threads = 1;
+    /** Playout limit; 0 means unlimited. */
+    private long _playouts;
+    /** True iff moves are ordered. */
+    private boolean _ordering = true;
+    /** Spear limits, indexed by remaining depth less 1. */
+    private int[] _arrowLimits = new int[0];
+    /** True iff the search is by half-plies. */
+    private boolean _splitPly;
+    /** True iff AIs ponder. */
+    private boolean _ponder;
+    /** Name of the parallel search strategy. */
+    private String _strategy = STRATEGIES[0];
+    /** Name of the static evaluator. */
+    private String _evaluator = Evaluator.NAMES[0];
+    /** Opening book, or null. */
+    private OpeningBook _book;
+    /** Territory evaluator weights in the opening and the endgame. */
+    private int[] _openingWeights = TerritoryEvaluator.OPENING_WEIGHTS,
+        _endgameWeights = TerritoryEvaluator.ENDGAME_WEIGHTS;
+    /** Entries in the transposition table of each new AI. */
+    private int _tableSize = TranspositionTable.DEFAULT_SIZE;
+}
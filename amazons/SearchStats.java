@@ -0,0 +1,164 @@
+package amazons;
+
+/** Counters describing one search: how much work it did, how well its
+ *  move ordering worked, and where its time went.  A searching thread
+ *  keeps its own SearchStats, and a multi-threaded search adds its
+ *  threads' counters together when it finishes.  SearchStats are not
+ *  synchronized.
+ *  @author Joseph Park
+ */
+final class SearchStats {
+
+    /** Record visits to COUNT positions. */
+    void visited(long count) {
+        _nodes += count;
+    }
+
+    /** Record that the moves of a position were searched, and that the
+     *  search of the position ended in a beta cutoff iff CUTOFF, after
+     *  trying MOVES moves. */
+    void expanded(boolean cutoff, int moves) {
+        _expanded += 1;
+        if (cutoff) {
+            _cutoffs += 1;
+            if (moves == 1) {
+                _firstCutoffs += 1;
+            }
+        }
+    }
+
+    /** Record that a position was searched again with a wider window,
+     *  after a null-window or aspiration search failed. */
+    void researched() {
+        _researches += 1;
+    }
+
+    /** Record NANOS nanoseconds spent generating moves. */
+    void generation(long nanos) {
+        _generationNanos += nanos;
+    }
+
+    /** Record NANOS nanoseconds spent evaluating positions. */
+    void evaluation(long nanos) {
+        _evaluationNanos += nanos;
+    }
+
+    /** Record the completion of an iteration to depth DEPTH, which
+     *  visited NODES positions. */
+    void iteration(int depth, long nodes) {
+        _iterationNodes[depth] += nodes;
+        _depth = Math.max(_depth, depth);
+    }
+
+    /** Record that the whole search took NANOS nanoseconds. */
+    void finish(long nanos) {
+        _elapsedNanos = nanos;
+    }
+
+    /** Add the counters of OTHER, a search of the same position by
+     *  another thread, to mine.  My depth becomes the greater of the
+     *  two. */
+    void add(SearchStats other) {
+        _nodes += other._nodes;
+        _expanded += other._expanded;
+        _cutoffs += other._cutoffs;
+        _firstCutoffs += other._firstCutoffs;
+        _researches += other._researches;
+        _generationNanos += other._generationNanos;
+        _evaluationNanos += other._evaluationNanos;
+        for (int d = 0; d < _iterationNodes.length; d += 1) {
+            _iterationNodes[d] += other._iterationNodes[d];
+        }
+        _depth = Math.max(_depth, other._depth);
+    }
+
+    /** Return the number of positions visited. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the depth of the deepest completed iteration. */
+    int depth() {
+        return _depth;
+    }
+
+    /** Return the duration of the search in nanoseconds. */
+    long elapsedNanos() {
+        return _elapsedNanos;
+    }
+
+    /** Return the positions visited per second. */
+    double nodesPerSecond() {
+        return _nodes / Math.max(_elapsedNanos / 1e9, 1e-9);
+    }
+
+    /** Return the fraction of searched positions that ended in a beta
+     *  cutoff. */
+    double cutoffRate() {
+        return _expanded == 0 ? 0.0 : (double) _cutoffs / _expanded;
+    }
+
+    /** Return the fraction of beta cutoffs caused by the first move
+     *  tried: a measure of the quality of move ordering. */
+    double firstMoveCutoffRate() {
+        return _cutoffs == 0 ? 0.0 : (double) _firstCutoffs / _cutoffs;
+    }
+
+    /** Return the effective branching factor: the ratio of the work done
+     *  by the deepest completed iteration to that of the one before, or
+     *  0 if there were not two iterations. */
+    double branchingFactor() {
+        if (_depth < 2 || _iterationNodes[_depth - 1] == 0) {
+            return 0.0;
+        }
+        return (double) _iterationNodes[_depth]
+            / _iterationNodes[_depth - 1];
+    }
+
+    /** Return the number of positions searched again with a wider
+     *  window. */
+    long researches() {
+        return _researches;
+    }
+
+    /** Return the total time spent generating moves, in nanoseconds,
+     *  over all threads. */
+    long generationNanos() {
+        return _generationNanos;
+    }
+
+    /** Return the total time spent evaluating positions, in
+     *  nanoseconds, over all threads. */
+    long evaluationNanos() {
+        return _evaluationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("depth %d, %d nodes in %.3f s (%.0f nodes/s), "
+                             + "EBF %.1f, cutoffs %.1f%% (first move "
+                             + "%.1f%%), %d re-searches, movegen %.3f s, "
+                             + "eval %.3f s", _depth, _nodes,
+                             _elapsedNanos / 1e9, nodesPerSecond(),
+                             branchingFactor(), 100 * cutoffRate(),
+                             100 * firstMoveCutoffRate(), _researches,
+                             _generationNanos / 1e9, _evaluationNanos / 1e9);
+    }
+
+    /** Positions visited and searched (not answered at once). */
+    private long _nodes, _expanded;
+    /** Beta cutoffs, and those caused by the first move tried. */
+    private long _cutoffs, _firstCutoffs;
+    /** Searches repeated with a wider window. */
+    private long _researches;
+    /** Time spent generating moves and evaluating positions. */
+    private long _generationNanos, _evaluationNanos;
+    /** _iterationNodes[d] is the number of positions visited by
+     *  iterations to depth d. */
+    private final long[] _iterationNodes =
+        new long[SearchOptions.MAX_DEPTH + 1];
+    /** Deepest completed iteration. */
+    private int _depth;
+    /** Duration of the search. */
+    private long _elapsedNanos;
+}
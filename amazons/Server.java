@@ -0,0 +1,344 @@
+package amazons;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import static amazons.Piece.*;
+import static amazons.Utils.error;
+
+/** A long-running engine that serves independent game sessions over a
+ *  local socket, one session per connection, up to a fixed number at
+ *  once.  Each session has its own Board, SearchOptions, and players
+ *  (whose AIs share one transposition table), and speaks a line
+ *  protocol (one command per line, replies likewise):
+ *  <pre>
+ *  position startpos [moves MOVE...]   set up a position
+ *  go [time MILLIS] [depth N]          search it (the limits stay set);
+ *                                      replies "info ..." and
+ *                                      "bestmove MOVE" when done
+ *  stop                                end the search early
+ *  setoption NAME VALUE                as for SearchOptions.set, or
+ *                                      "engine ab" / "engine mcts"
+ *  isready                             replies "readyok"
+ *  board                               prints the position
+ *  quit                                ends the session
+ *  </pre>
+ *  Errors are reported as "error MESSAGE".  A session's commands are
+ *  read on one thread, and its searches run on another, so that "stop"
+ *  can be obeyed while a search is running.
+ *  @author Joseph Park
+ */
+class Server {
+
+    /** A server that will listen at ADDRESS: "unix:PATH" for a
+     *  Unix-domain socket, or "[HOST:]PORT" for TCP (HOST defaults to
+     *  the loopback address), serving up to DEFAULT_SESSIONS sessions
+     *  at once. */
+    Server(String address) {
+        this(address, DEFAULT_SESSIONS);
+    }
+
+    /** A server that will listen at ADDRESS, as for Server(ADDRESS),
+     *  serving up to SESSIONS sessions at once.  A client that connects
+     *  while that many are open is told "error too many sessions" and
+     *  disconnected. */
+    Server(String address, int sessions) {
+        if (sessions < 1) {
+            throw error("session limit must be positive");
+        }
+        _address = address;
+        _sessions = new Semaphore(sessions);
+    }
+
+    /** Accept and serve connections until the process ends. */
+    void run() throws IOException {
+        ServerSocketChannel listener;
+        SocketAddress where;
+        if (_address.startsWith("unix:")) {
+            Path path = Path.of(_address.substring(5));
+            Files.deleteIfExists(path);
+            listener = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            where = UnixDomainSocketAddress.of(path);
+        } else {
+            int colon = _address.lastIndexOf(':');
+            InetAddress host = colon < 0 ? InetAddress.getLoopbackAddress()
+                : InetAddress.getByName(_address.substring(0, colon));
+            int port;
+            try {
+                port = Integer.parseInt(_address.substring(colon + 1));
+            } catch (NumberFormatException excp) {
+                throw error("bad server address: %s", _address);
+            }
+            listener = ServerSocketChannel.open();
+            where = new InetSocketAddress(host, port);
+        }
+        listener.bind(where);
+        System.err.printf("Amazons server listening on %s%n", _address);
+        while (true) {
+            SocketChannel connection = listener.accept();
+            if (!_sessions.tryAcquire()) {
+                refuse(connection);
+                continue;
+            }
+            _threads.submit(() -> {
+                try {
+                    new Session(connection).run();
+                } finally {
+                    _sessions.release();
+                }
+            });
+        }
+    }
+
+    /** Tell the client on CONNECTION that there are too many sessions,
+     *  and close it. */
+    private static void refuse(SocketChannel connection) {
+        try (SocketChannel closing = connection;
+             PrintWriter out = new PrintWriter(
+                 Channels.newWriter(closing, StandardCharsets.UTF_8),
+                 true)) {
+            out.println("error too many sessions");
+        } catch (IOException excp) {
+            System.err.printf("could not refuse session: %s%n",
+                              excp.getMessage());
+        }
+    }
+
+    /** One client's game. */
+    private class Session {
+
+        /** A session talking over CONNECTION. */
+        Session(SocketChannel connection) {
+            _connection = connection;
+            _options = new SearchOptions();
+        }
+
+        /** Read and obey commands until "quit" or the end of input. */
+        void run() {
+            try (SocketChannel connection = _connection;
+                 BufferedReader in = new BufferedReader(
+                     Channels.newReader(connection, StandardCharsets.UTF_8));
+                 PrintWriter out = new PrintWriter(
+                     Channels.newWriter(connection, StandardCharsets.UTF_8),
+                     true)) {
+                _out = out;
+                for (String line = in.readLine(); line != null;
+                     line = in.readLine()) {
+                    String[] words = line.trim().split("\\s+");
+                    if (words[0].equals("quit")) {
+                        break;
+                    }
+                    try {
+                        execute(words);
+                    } catch (IllegalArgumentException excp) {
+                        send("error %s", excp.getMessage());
+                    }
+                }
+                stopSearch();
+            } catch (IOException excp) {
+                System.err.printf("session ended: %s%n", excp.getMessage());
+            }
+        }
+
+        /** Obey the command whose words are WORDS. */
+        private void execute(String[] words) {
+            switch (words[0]) {
+            case "":
+                break;
+            case "position":
+                position(words);
+                break;
+            case "go":
+                go(words);
+                break;
+            case "stop":
+                stopSearch();
+                break;
+            case "setoption":
+                if (words.length != 3) {
+                    throw error("usage: setoption NAME VALUE");
+                }
+                checkIdle();
+                if (words[1].equals("engine")) {
+                    setEngine(words[2]);
+                } else {
+                    _options.set(words[1], words[2]);
+                    if (words[1].equals("hash")) {
+                        _table = null;
+                        _players[0] = _players[1] = null;
+                    }
+                }
+                break;
+            case "isready":
+                send("readyok");
+                break;
+            case "board":
+                send("%s", _board.toString().stripTrailing());
+                break;
+            default:
+                throw error("unknown command: %s", words[0]);
+            }
+        }
+
+        /** Command "position startpos [moves MOVE...]", given as
+         *  WORDS. */
+        private void position(String[] words) {
+            checkIdle();
+            if (words.length < 2 || !words[1].equals("startpos")
+                || (words.length > 2 && !words[2].equals("moves"))) {
+                throw error("usage: position startpos [moves MOVE...]");
+            }
+            Board board = new Board();
+            for (int i = 3; i < words.length; i += 1) {
+                Move move = Move.mv(words[i]);
+                if (move == null || board.get(move.from()) != board.turn()
+                    || !board.isLegal(move)) {
+                    throw error("illegal move: %s", words[i]);
+                }
+                board.makeMove(move);
+            }
+            _board = board;
+        }
+
+        /** Command "go [time MILLIS] [depth N]", given as WORDS. */
+        private void go(String[] words) {
+            checkIdle();
+            if (words.length % 2 != 1) {
+                throw error("usage: go [time MILLIS] [depth N]");
+            }
+            for (int i = 1; i < words.length; i += 2) {
+                if (!words[i].equals("time") && !words[i].equals("depth")) {
+                    throw error("unknown go parameter: %s", words[i]);
+                }
+                _options.set(words[i], words[i + 1]);
+            }
+            if (_board.winner() != EMPTY) {
+                throw error("game over");
+            }
+            Board position = new Board(_board);
+            Player player = player(position.turn());
+            player.prepareSearch();
+            _searcher = player;
+            _searching = true;
+            _search = _threads.submit(() -> {
+                try {
+                    Move move = player.findMove(position);
+                    send("info %s", player.statistics());
+                    _searching = false;
+                    send("bestmove %s", move);
+                } catch (RuntimeException excp) {
+                    _searching = false;
+                    send("error search failed: %s", excp);
+                }
+            });
+        }
+
+        /** Return my player for SIDE, creating it if needed.  My AIs
+         *  share one transposition table, so that a session costs one
+         *  table however it is used. */
+        private Player player(Piece side) {
+            int k = side == WHITE ? 0 : 1;
+            if (_players[k] == null && _mcts) {
+                _players[k] = new MCTSPlayer(side, null, _options);
+            } else if (_players[k] == null) {
+                if (_table == null) {
+                    _table = new TranspositionTable(_options.tableSize());
+                }
+                _players[k] = new AI(side, null, _options, _table);
+            }
+            return _players[k];
+        }
+
+        /** Use the engine of kind KIND ("ab" or "mcts") from now on. */
+        private void setEngine(String kind) {
+            if (!kind.equals("ab") && !kind.equals("mcts")) {
+                throw error("unknown engine: %s", kind);
+            }
+            _mcts = kind.equals("mcts");
+            _players[0] = _players[1] = null;
+            _table = null;
+        }
+
+        /** Raise an error if a search is running.  A search that has
+         *  found its move counts as finished, even if its thread has not
+         *  quite ended, since the client may already have seen its
+         *  reply. */
+        private void checkIdle() {
+            if (_searching) {
+                throw error("search in progress");
+            }
+            stopSearch();
+        }
+
+        /** Stop the search in progress, if any, and wait for its reply to
+         *  be sent. */
+        private void stopSearch() {
+            if (_search == null) {
+                return;
+            }
+            _searcher.stop();
+            try {
+                _search.get();
+            } catch (Exception excp) {
+                send("error %s", excp);
+            }
+            _search = null;
+        }
+
+        /** Send the line given by FORMAT and ARGS, as for
+         *  String.format. */
+        private void send(String format, Object... args) {
+            synchronized (_connection) {
+                _out.printf(format + "%n", args);
+            }
+        }
+
+        /** The connection to my client. */
+        private final SocketChannel _connection;
+        /** Writer for replies. */
+        private PrintWriter _out;
+        /** My search options. */
+        private final SearchOptions _options;
+        /** The current position. */
+        private Board _board = new Board();
+        /** True iff I use Monte Carlo players. */
+        private boolean _mcts;
+        /** My players for White and Black, created when needed. */
+        private final Player[] _players = new Player[2];
+        /** The transposition table of my AIs, or null if none yet. */
+        private TranspositionTable _table;
+        /** The search in progress or last finished, or null. */
+        private Future<?> _search;
+        /** The player doing _search. */
+        private Player _searcher;
+        /** True from the start of a search until it has found a move. */
+        private volatile boolean _searching;
+    }
+
+    /** Default limit on the number of sessions open at once. */
+    static final int DEFAULT_SESSIONS = 16;
+
+    /** Where I listen. */
+    private final String _address;
+    /** Permits for the sessions that may still be opened. */
+    private final Semaphore _sessions;
+    /** Threads for sessions and their searches.  Each session and each
+     *  running search has a thread of its own, since both block. */
+    private final ExecutorService _threads = Executors.newCachedThreadPool();
+}
@@ -41,25 +41,15 @@ final class Square {
         return _index;
     }
 
-    /** returns piece. */
-    Piece getPiece() {
-        return piece;
-    }
-
-    /** sets piece.
-     * @param p piece*/
-    void setPiece(Piece p) {
-        int pos = _row * 10 + _col;
-        SQUARES[pos].piece = p;
-        playboard[_row][_col].piece = p;
-    }
-
-    /** Return true iff THIS - TO is a valid queen move. */
+    /** Return true iff THIS - TO is a valid queen move: TO is a different
+     *  square in the same row, column, or diagonal.  Says nothing about
+     *  what lies between them on any particular board. */
     boolean isQueenMove(Square to) {
-        boolean chk0 = col() != to.col() || row() != to.row();
-        boolean chk1 = Math.abs(to.col() - col()) == Math.abs(to.row() - row());
-        boolean chk2 = to.col() - col() == 0 || to.row() - row() == 0;
-        return chk0 && to.piece == Piece.EMPTY && (chk1 || chk2);
+        int dc = Math.abs(to.col() - col()), dr = Math.abs(to.row() - row());
+        boolean chk0 = this != to;
+        boolean chk1 = dc == dr;
+        boolean chk2 = dc == 0 || dr == 0;
+        return chk0 && (chk1 || chk2);
     }
 
     /** Definitions of direction for queenMove.  DIR[k] = (dcol, drow)
@@ -88,8 +78,10 @@ final class Square {
             col += dcol;
             steps -= 1;
         }
-        Square dest = playboard[row][col];
-        return dest;
+        if (!exists(col, row)) {
+            return null;
+        }
+        return SQUARES[row * 10 + col];
     }
 
 
@@ -134,60 +126,6 @@ final class Square {
         return -1;
     }
 
-    /** direction if to-spear.
-     * @param to to square
-     * @param asEmpty from
-     * @return int direction*/
-    int directionAsEmpty(Square to, Square asEmpty) {
-        if (!isEmptyMove(to, asEmpty)) {
-            return -1;
-        }
-        int dirc = 0;
-        int dirr = 0;
-        if (_row != to._row && _col != to._col) {
-            if (_row < to._row) {
-                dirr = 1;
-            } else {
-                dirr = -1;
-            }
-            if (_col < to._col) {
-                dirc = 1;
-            } else {
-                dirc = -1;
-            }
-        } else if (_row != to._row) {
-            if (_row < to._row) {
-                dirr = 1;
-            } else {
-                dirr = -1;
-            }
-        } else {
-            if (_col < to._col) {
-                dirc = 1;
-            } else {
-                dirc = -1;
-            }
-        }
-        for (int i = 0; i < DIR.length; i += 1) {
-            if (DIR[i][0] == dirc && DIR[i][1] == dirr) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
-    /** valid to spear.
-     * @param to to square
-     * @param asEmpty from
-     * @return boolean direction*/
-    boolean isEmptyMove(Square to, Square asEmpty) {
-        boolean chk0 = col() != to.col() || row() != to.row();
-        boolean chk1 = Math.abs(to.col() - col()) == Math.abs(to.row() - row());
-        boolean chk2 = to.col() - col() == 0 || to.row() - row() == 0;
-        return chk0 && (to.piece == Piece.EMPTY || (to.col() == asEmpty.col()
-                && to.row() == asEmpty.row())) && (chk1 || chk2);
-    }
-
     @Override
     public String toString() {
         return _str;
@@ -200,7 +138,7 @@ final class Square {
 
     /** Return the (unique) Square denoting COL ROW. */
     static Square sq(int col, int row) {
-        if (!exists(row, col)) {
+        if (!exists(col, row)) {
             throw error("row or column out of bounds");
         }
         return SQUARES[row * 10 + col];
@@ -233,19 +171,17 @@ final class Square {
         return SQUARE_LIST.iterator();
     }
 
-    /** Return the Square with index INDEX.
-     * @param index i*/
-    Square(int index) {
+    /** The Square with index INDEX.  Only used to fill SQUARES. */
+    private Square(int index) {
         _index = index;
         _row = index / 10;
         _col = index % 10;
-        piece = Piece.EMPTY;
         String c = Character.toString((char) ((index % 10) + 'a'));
         _str = String.format(c + (_row + 1));
     }
 
     /** The cache of all created squares, by index. */
-    static final Square[] SQUARES = new Square[Board.SIZE * Board.SIZE];
+    private static final Square[] SQUARES = new Square[Board.SIZE * Board.SIZE];
 
     /** SQUARES viewed as a List. */
     private static final List<Square> SQUARE_LIST = Arrays.asList(SQUARES);
@@ -253,16 +189,9 @@ final class Square {
     static {
         for (int i = Board.SIZE * Board.SIZE - 1; i >= 0; i -= 1) {
             SQUARES[i] = new Square(i);
-            SQUARES[i].setBoard(new Square[Board.SIZE][Board.SIZE]);
         }
     }
 
-    /** set board.
-     * @param b array*/
-    public void setBoard(Square[][] b) {
-        playboard = b;
-    }
-
     /** My index position. */
     private final int _index;
 
@@ -271,10 +200,4 @@ final class Square {
 
     /** My String denotation. */
     private final String _str;
-
-    /** piece. */
-    private Piece piece;
-
-    /** board. */
-    private Square[][] playboard;
 }
@@ -0,0 +1,114 @@
+package amazons;
+
+import static amazons.Piece.*;
+import static amazons.Utils.error;
+
+/** An Evaluator that estimates which side will own each empty square.
+ *  It computes, for both sides, the number of queen moves and of king
+ *  moves each square is from the nearest of that side's queens (see
+ *  Board.queenDistances), and combines four terms over the squares:
+ *  <ul>
+ *  <li> T1, queen territory: +1 for each square White reaches in fewer
+ *       queen moves than Black, -1 for the reverse, and a small bonus
+ *       for the side to move on ties;
+ *  <li> T2, king territory: the same for king moves;
+ *  <li> C1, queen position: 2 * sum(2^-dW - 2^-dB) over queen distances,
+ *       which rewards being close to many squares;
+ *  <li> C2, king position: sum(clamp((dB - dW) / 6, -1, 1)) over king
+ *       distances.
+ *  </ul>
+ *  Squares neither side can reach count for nothing.  The terms are
+ *  mixed with weights that move from an opening set to an endgame set
+ *  as the number of squares either side can still reach falls: early
+ *  on, being well placed (C1, C2) matters most; once the board has
+ *  divided up, territory (T1) is nearly everything.
+ *  @author Joseph Park
+ */
+class TerritoryEvaluator implements Evaluator {
+
+    /** Default percentage weights of T1, T2, C1, and C2 in the opening
+     *  and in the endgame. */
+    static final int[]
+        OPENING_WEIGHTS = { 20, 15, 40, 25 },
+        ENDGAME_WEIGHTS = { 80, 15, 5, 0 };
+
+    /** The score of one square wholly owned by White.  Scores are
+     *  integers in units of 1 / SQUARE of a square. */
+    static final int SQUARE = 1 << 10;
+
+    /** An evaluator using the default weights. */
+    TerritoryEvaluator() {
+        this(OPENING_WEIGHTS, ENDGAME_WEIGHTS);
+    }
+
+    /** An evaluator that weights T1, T2, C1, and C2 by percentages
+     *  mixed from OPENING[0..3] and ENDGAME[0..3] in the proportion of
+     *  squares either side can and cannot still reach.  AIs take these
+     *  from their SearchOptions ("territory.opening" and
+     *  "territory.endgame"). */
+    TerritoryEvaluator(int[] opening, int[] endgame) {
+        if (opening.length != TERMS || endgame.length != TERMS) {
+            throw error("need %d weights for each phase", TERMS);
+        }
+        _opening = opening.clone();
+        _endgame = endgame.clone();
+    }
+
+    @Override
+    public int evaluate(Board board) {
+        board.queenDistances(WHITE, _queenW);
+        board.queenDistances(BLACK, _queenB);
+        board.kingDistances(WHITE, _kingW);
+        board.kingDistances(BLACK, _kingB);
+        int tie = board.turn() == WHITE ? TIE : -TIE;
+        long t1 = 0, t2 = 0, c1 = 0, c2 = 0;
+        int live = 0;
+        for (int k = 0; k < CELLS; k += 1) {
+            int qw = _queenW[k], qb = _queenB[k];
+            if (qw == Board.UNREACHABLE && qb == Board.UNREACHABLE) {
+                continue;
+            }
+            int kw = _kingW[k], kb = _kingB[k];
+            live += 1;
+            t1 += qw < qb ? SQUARE : qw > qb ? -SQUARE : tie;
+            t2 += kw < kb ? SQUARE : kw > kb ? -SQUARE : tie;
+            c1 += 2 * (power(qw) - power(qb));
+            c2 += Math.max(-SQUARE, Math.min(SQUARE,
+                                             (kb - kw) * SQUARE / 6));
+        }
+        long total = weight(0, live) * t1 + weight(1, live) * t2
+            + weight(2, live) * c1 + weight(3, live) * c2;
+        return (int) (total / (100L * CELLS));
+    }
+
+    /** An eighth of a square. */
+    @Override
+    public int aspirationWindow() {
+        return SQUARE / 8;
+    }
+
+    /** Return CELLS times the percentage weight of term I when LIVE
+     *  squares are reachable by either side. */
+    private long weight(int i, int live) {
+        return (long) _opening[i] * live
+            + (long) _endgame[i] * (CELLS - live);
+    }
+
+    /** Return SQUARE * 2^-D, or 0 if D is too large to matter. */
+    private static int power(int d) {
+        return d < 31 ? SQUARE >> d : 0;
+    }
+
+    /** Number of terms. */
+    static final int TERMS = 4;
+    /** Number of squares. */
+    private static final int CELLS = Board.SIZE * Board.SIZE;
+    /** Value of a tied square to the side to move. */
+    private static final int TIE = SQUARE / 5;
+
+    /** Term weights at the two ends of the game. */
+    private final int[] _opening, _endgame;
+    /** Scratch space for distances. */
+    private final int[] _queenW = new int[CELLS], _queenB = new int[CELLS],
+        _kingW = new int[CELLS], _kingB = new int[CELLS];
+}
@@ -0,0 +1,379 @@
+package amazons;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static amazons.Piece.*;
+import static amazons.Utils.error;
+
+/** A match of many games between two engine configurations, played
+ *  without display on several threads at once.  The games are played
+ *  in pairs, each pair starting with the same OPENING_PLIES random moves
+ *  (so that deterministic engines do not repeat one game), and the
+ *  engines taking each color once.  The match ends after a given number
+ *  of games or as soon as a sequential probability ratio test (SPRT)
+ *  decides between the hypotheses that the first engine is ELO0 and
+ *  ELO1 Elo points stronger than the second, with error rates of 5%
+ *  each way.  Amazons has no draws, so the test is on the binomial win
+ *  rate.
+ *  @author Joseph Park
+ */
+class Tournament {
+
+    /** A configuration of an automated player: its kind and search
+     *  options. */
+    static class Engine {
+
+        /** The engine described by SPEC, of the form
+         *  KIND[:KEY=VALUE[,KEY=VALUE]...], where KIND is "ab" (an AI)
+         *  or "mcts" (an MCTSPlayer), and the KEYs are options as for
+         *  SearchOptions.set.  A depth without a time means no time
+         *  limit. */
+        Engine(String spec) {
+            _spec = spec;
+            String[] parts = spec.split(":", 2);
+            _options = new SearchOptions();
+            boolean timed = false, deep = false;
+            if (parts.length > 1) {
+                for (String setting : parts[1].split(",")) {
+                    String[] kv = setting.split("=", 2);
+                    if (kv.length != 2) {
+                        throw error("bad engine setting: %s", setting);
+                    }
+                    _options.set(kv[0], kv[1]);
+                    deep |= kv[0].equals("depth");
+                    timed |= kv[0].equals("time");
+                }
+            }
+            if (deep && !timed) {
+                _options.setMoveTime(0);
+            }
+            switch (parts[0]) {
+            case "ab":
+                _template = new AI(_options);
+                break;
+            case "mcts":
+                _template = new MCTSPlayer(_options);
+                break;
+            default:
+                throw error("unknown engine kind: %s", parts[0]);
+            }
+        }
+
+        /** Return the number of threads each of my searches uses. */
+        int threads() {
+            return _options.threads();
+        }
+
+        @Override
+        public String toString() {
+            return _spec;
+        }
+
+        /** My description. */
+        private final String _spec;
+        /** My search options. */
+        private final SearchOptions _options;
+        /** The template from which my players are created. */
+        private final Player _template;
+    }
+
+    /** A match of up to GAMES games between A and B, playing PARALLEL
+     *  games at a time, and stopping early when an SPRT of ELO0 against
+     *  ELO1 (the Elo advantage of A over B) reaches a decision. */
+    Tournament(Engine a, Engine b, int games, int parallel,
+               double elo0, double elo1) {
+        if (games < 1 || parallel < 1 || elo0 >= elo1) {
+            throw error("bad tournament parameters");
+        }
+        _engines = new Engine[] { a, b };
+        _games = games;
+        _parallel = parallel;
+        _elo0 = elo0;
+        _elo1 = elo1;
+        _lower = Math.log(BETA / (1 - ALPHA));
+        _upper = Math.log((1 - BETA) / ALPHA);
+    }
+
+    /** Append each game of the match to JOURNAL, if it is non-null.  A
+     *  game's recorded seed is that of its opening (see opening). */
+    void setJournal(GameJournal.Writer journal) {
+        _journal = journal;
+    }
+
+    /** Play the match, printing progress every REPORT_INTERVAL games and
+     *  a final summary on OUT. */
+    void run(PrintStream out) {
+        _out = out;
+        _start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(_parallel);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < _parallel; i += 1) {
+            workers.add(pool.submit(this::work));
+        }
+        pool.shutdown();
+        try {
+            for (Future<?> f : workers) {
+                f.get();
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        }
+        out.println(summary());
+    }
+
+    /** Return the default number of games to play at once with A and B:
+     *  enough to keep every processor busy. */
+    static int defaultParallel(Engine a, Engine b) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, cores / Math.max(a.threads(), b.threads()));
+    }
+
+    /** Play games until the match is over. */
+    private void work() {
+        Table table = _tables.get();
+        Controller controller = table._controller;
+        GameStats stats = table._stats;
+        for (int game = nextGame(); game >= 0; game = nextGame()) {
+            int white = game & 1, black = 1 - white;
+            stats.start(table.player(white, WHITE),
+                        table.player(black, BLACK));
+            Piece winner = controller.playGame(stats._white, stats._black,
+                                               opening(game / 2));
+            record(game, winner, stats, controller.board().numMoves());
+            if (_journal != null) {
+                try {
+                    _journal.write(new GameRecord(
+                        _engines[white].toString(),
+                        _engines[black].toString(), game / 2,
+                        controller.board().history(), winner));
+                } catch (IOException excp) {
+                    throw error("could not write journal: %s",
+                                excp.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Return the random opening for the games of pair number PAIR.  The
+     *  same pair always gets the same opening. */
+    static Move[] opening(int pair) {
+        Random random = new Random(pair);
+        Board board = new Board();
+        Move[] result = new Move[OPENING_PLIES];
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int i = 0; i < OPENING_PLIES; i += 1) {
+            int n = board.generateMoves(board.turn(), moves);
+            result[i] = Move.mv(moves[random.nextInt(n)]);
+            board.makeMove(result[i]);
+        }
+        return result;
+    }
+
+    /** Return the number of the next game to play, or -1 if the match is
+     *  over. */
+    private synchronized int nextGame() {
+        if (_decided || _started == _games) {
+            return -1;
+        }
+        _started += 1;
+        return _started - 1;
+    }
+
+    /** Record that game number GAME (in which engine A had White iff
+     *  GAME is even) was won by WINNER after LENGTH moves, the players'
+     *  work being recorded in STATS. */
+    private synchronized void record(int game, Piece winner,
+                                     GameStats stats, int length) {
+        int a = game & 1;
+        if ((winner == WHITE) == (a == 0)) {
+            _wins += 1;
+        } else {
+            _losses += 1;
+        }
+        _moves += length;
+        _nodes[a] += stats._whiteNodes;
+        _nanos[a] += stats._whiteNanos;
+        _nodes[1 - a] += stats._blackNodes;
+        _nanos[1 - a] += stats._blackNanos;
+        double p0 = expected(_elo0), p1 = expected(_elo1);
+        _llr = _wins * Math.log(p1 / p0)
+            + _losses * Math.log((1 - p1) / (1 - p0));
+        if (_llr <= _lower || _llr >= _upper) {
+            _decided = true;
+        }
+        int played = _wins + _losses;
+        if (played % REPORT_INTERVAL == 0 && !_decided
+            && played < _games) {
+            _out.printf("%d games: %d-%d, LLR %.2f%n", played, _wins,
+                        _losses, _llr);
+        }
+    }
+
+    /** Return the final report of the match. */
+    private synchronized String summary() {
+        int played = _wins + _losses;
+        double score = (double) _wins / played;
+        double margin = 1.96 * Math.sqrt(score * (1 - score) / played);
+        String verdict = _llr >= _upper ? "H1 accepted"
+            : _llr <= _lower ? "H0 accepted" : "inconclusive";
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("A = %s%nB = %s%n", _engines[0],
+                                    _engines[1]));
+        report.append(String.format("Games: %d in %.1f s, A %d - B %d "
+                                    + "(%.1f%%)%n", played,
+                                    (System.nanoTime() - _start) / 1e9,
+                                    _wins, _losses, 100 * score));
+        report.append(String.format("Elo (A - B): %.1f [%.1f, %.1f]%n",
+                                    elo(score), elo(score - margin),
+                                    elo(score + margin)));
+        report.append(String.format("SPRT [%.1f, %.1f]: LLR %.2f "
+                                    + "(%.2f, %.2f), %s%n", _elo0, _elo1,
+                                    _llr, _lower, _upper, verdict));
+        for (int i = 0; i < 2; i += 1) {
+            report.append(String.format("%c nodes/s: %.0f%n", 'A' + i,
+                                        _nodes[i]
+                                        / Math.max(_nanos[i] / 1e9, 1e-9)));
+        }
+        report.append(String.format("Average game length: %.1f moves",
+                                    (double) _moves / played));
+        return report.toString();
+    }
+
+    /** Return the expected score of a player ELO points stronger than
+     *  its opponent. */
+    static double expected(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /** Return the Elo difference corresponding to expected score SCORE
+     *  (clamped away from 0 and 1). */
+    static double elo(double score) {
+        double s = Math.min(Math.max(score, 1e-3), 1 - 1e-3);
+        return -400 * Math.log10(1 / s - 1);
+    }
+
+    /** A Reporter that discards messages, other than errors, and credits
+     *  each player's work as it reports its moves. */
+    private static class GameStats implements Reporter {
+
+        @Override
+        public void reportError(String format, Object... args) {
+            System.err.printf(format, args);
+        }
+
+        @Override
+        public void reportNote(String format, Object... args) {
+        }
+
+        @Override
+        public void reportMove(Move move) {
+            long now = System.nanoTime();
+            if (_controller.board().turn() == WHITE) {
+                _whiteNodes += _white.nodes();
+                _whiteNanos += now - _last;
+            } else {
+                _blackNodes += _black.nodes();
+                _blackNanos += now - _last;
+            }
+            _last = now;
+        }
+
+        /** Start counting for a game between WHITE and BLACK. */
+        void start(Player white, Player black) {
+            _white = white;
+            _black = black;
+            _whiteNodes = _blackNodes = _whiteNanos = _blackNanos = 0;
+            _last = System.nanoTime();
+        }
+
+        /** The controller of the game. */
+        private Controller _controller;
+        /** The players. */
+        private Player _white, _black;
+        /** Work done and time spent by each player. */
+        private long _whiteNodes, _blackNodes, _whiteNanos, _blackNanos;
+        /** Time of the last move. */
+        private long _last;
+    }
+
+    /** The controller, statistics, and players with which one worker
+     *  thread plays all its games, so that each player, with its
+     *  transposition table, is created once per thread, not once per
+     *  game. */
+    private class Table {
+
+        /** A table with no players yet. */
+        Table() {
+            _stats = new GameStats();
+            _controller = new Controller(new NullView(), null, _stats,
+                                         new TextPlayer(),
+                                         _engines[0]._template);
+            _stats._controller = _controller;
+        }
+
+        /** Return my player for engine number ENGINE (0 for A, 1 for B)
+         *  playing SIDE, ready to start a new game. */
+        Player player(int engine, Piece side) {
+            int k = 2 * engine + (side == WHITE ? 0 : 1);
+            if (_players[k] == null) {
+                _players[k] =
+                    _engines[engine]._template.create(side, _controller);
+            }
+            _players[k].newGame();
+            return _players[k];
+        }
+
+        /** The controller of my games. */
+        private final Controller _controller;
+        /** The work done in my current game. */
+        private final GameStats _stats;
+        /** My players, indexed by 2 * engine number + (0 for White, 1
+         *  for Black). */
+        private final Player[] _players = new Player[4];
+    }
+
+    /** Error rates of the SPRT. */
+    private static final double ALPHA = 0.05, BETA = 0.05;
+    /** Number of random moves at the start of each game. */
+    static final int OPENING_PLIES = 2;
+    /** Games between progress reports. */
+    private static final int REPORT_INTERVAL = 100;
+
+    /** The two engines, A and B. */
+    private final Engine[] _engines;
+    /** Most games to play, and number of games played at once. */
+    private final int _games, _parallel;
+    /** The SPRT's hypotheses. */
+    private final double _elo0, _elo1;
+    /** The SPRT's bounds on the log-likelihood ratio. */
+    private final double _lower, _upper;
+    /** Where progress is reported. */
+    private PrintStream _out;
+    /** Journal of the games played, or null. */
+    private GameJournal.Writer _journal;
+    /** Time at which the match started. */
+    private long _start;
+    /** Games started. */
+    private int _started;
+    /** Games won and lost by A. */
+    private int _wins, _losses;
+    /** Total moves in finished games. */
+    private long _moves;
+    /** Work done and time spent searching by A and B. */
+    private final long[] _nodes = new long[2], _nanos = new long[2];
+    /** The current log-likelihood ratio of the SPRT. */
+    private double _llr;
+    /** True once the SPRT has decided. */
+    private boolean _decided;
+    /** The table of each worker thread. */
+    private final ThreadLocal<Table> _tables =
+        ThreadLocal.withInitial(Table::new);
+}
@@ -0,0 +1,144 @@
+package amazons;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A fixed-size cache of search results, indexed by Board.key().  Each
+ *  entry records the depth searched, whether its score is exact or a
+ *  bound, the score, and the best move found.  Colliding entries are
+ *  replaced unless the resident entry is for the same position at a
+ *  greater depth.
+ *
+ *  The table may be shared by several searching threads without
+ *  locking.  Each entry is a pair of longs: the packed data, and the
+ *  position key XORed with that data.  A reader accepts an entry only
+ *  if the two XOR back to the key it is looking for, so an entry torn
+ *  by a concurrent write is simply a miss.
+ *  @author Joseph Park
+ */
+class TranspositionTable {
+
+    /** Bound type: the stored score is the exact value. */
+    static final int EXACT = 0;
+    /** Bound type: the true value is at least the stored score. */
+    static final int LOWER = 1;
+    /** Bound type: the true value is at most the stored score. */
+    static final int UPPER = 2;
+
+    /** Default number of entries. */
+    static final int DEFAULT_SIZE = 1 << 20;
+
+    /** Bytes of memory taken by each entry. */
+    static final int ENTRY_BYTES = 2 * Long.BYTES;
+
+    /** A table with room for SIZE entries, rounded down to a power of
+     *  two. */
+    TranspositionTable(int size) {
+        int n = Integer.highestOneBit(Math.max(size, 1));
+        _mask = n - 1;
+        _checks = new long[n];
+        _data = new long[n];
+    }
+
+    /** A table with DEFAULT_SIZE entries. */
+    TranspositionTable() {
+        this(DEFAULT_SIZE);
+    }
+
+    /** Return the entry for KEY, or 0 if there is none.  The result is
+     *  to be taken apart with depth, bound, score, and move. */
+    long find(long key) {
+        _probes.increment();
+        int slot = (int) key & _mask;
+        long data = _data[slot];
+        if ((data & MOVE_MASK) != 0 && (_checks[slot] ^ data) == key) {
+            _hits.increment();
+            return data;
+        }
+        return 0;
+    }
+
+    /** Return the depth of ENTRY, as returned by find. */
+    static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & 0xff;
+    }
+
+    /** Return the bound type (EXACT, LOWER, or UPPER) of ENTRY. */
+    static int bound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & 0x3;
+    }
+
+    /** Return the score of ENTRY. */
+    static int score(long entry) {
+        return (int) (entry >>> SCORE_SHIFT);
+    }
+
+    /** Return the code (as for Move.code()) of the best move of
+     *  ENTRY. */
+    static int move(long entry) {
+        return (int) (entry & MOVE_MASK);
+    }
+
+    /** Record that searching the position with key KEY to depth DEPTH
+     *  gave SCORE, of bound type BOUND, with best move MOVE (a move
+     *  code, not Move.NONE). */
+    void store(long key, int depth, int bound, int score, int move) {
+        int slot = (int) key & _mask;
+        long old = _data[slot];
+        if ((_checks[slot] ^ old) == key && depth(old) > depth) {
+            return;
+        }
+        long data = ((long) score << SCORE_SHIFT)
+            | ((long) depth << DEPTH_SHIFT) | ((long) bound << BOUND_SHIFT)
+            | move;
+        _data[slot] = data;
+        _checks[slot] = key ^ data;
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        Arrays.fill(_data, 0);
+        Arrays.fill(_checks, 0);
+    }
+
+    /** Return the number of calls to find since the last
+     *  resetStatistics. */
+    long probes() {
+        return _probes.sum();
+    }
+
+    /** Return the number of successful calls to find since the last
+     *  resetStatistics. */
+    long hits() {
+        return _hits.sum();
+    }
+
+    /** Return hits() / probes(), or 0 if there have been no probes. */
+    double hitRate() {
+        long probes = probes();
+        return probes == 0 ? 0.0 : (double) hits() / probes;
+    }
+
+    /** Reset the probe and hit counts. */
+    void resetStatistics() {
+        _probes.reset();
+        _hits.reset();
+    }
+
+    /** Layout of the packed data: the move's code in bits 0-20, the
+     *  bound type in bits 21-22, the depth in bits 23-30, and the score
+     *  in bits 32-63.  A move field of Move.NONE marks an empty slot. */
+    private static final long MOVE_MASK = (1L << 21) - 1;
+    /** Bit positions of the fields of the packed data. */
+    private static final int BOUND_SHIFT = 21, DEPTH_SHIFT = 23,
+        SCORE_SHIFT = 32;
+
+    /** Mask selecting a slot from a key. */
+    private final int _mask;
+    /** Keys of the stored positions, each XORed with its data. */
+    private final long[] _checks;
+    /** Packed entries. */
+    private final long[] _data;
+    /** Statistics. */
+    private final LongAdder _probes = new LongAdder(), _hits = new LongAdder();
+}
@@ -2,6 +2,25 @@ package amazons;
 
 import org.junit.Test;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import static amazons.Piece.*;
 import static amazons.Piece.WHITE;
 import static org.junit.Assert.*;
@@ -42,7 +61,557 @@ public class UnitTest {
         assertTrue(Square.sq(7, 9).isQueenMove(Square.sq(0, 2)));
     }
 
-    /** Tests toString for initial board state and a smiling board state. :) */
+    /** Tests storing and replacing transposition table entries. */
+    @Test
+    public void testTranspositionTable() {
+        TranspositionTable table = new TranspositionTable(16);
+        int m1 = Move.mv("d1-d5(d2)").code(),
+            m2 = Move.mv("g1-g5(g2)").code();
+        assertEquals(0, table.find(17));
+        table.store(17, 3, TranspositionTable.LOWER, -42, m1);
+        long entry = table.find(17);
+        assertEquals(3, TranspositionTable.depth(entry));
+        assertEquals(TranspositionTable.LOWER,
+                     TranspositionTable.bound(entry));
+        assertEquals(-42, TranspositionTable.score(entry));
+        assertEquals(m1, TranspositionTable.move(entry));
+        table.store(17, 2, TranspositionTable.EXACT, 7, m2);
+        assertEquals(m1, TranspositionTable.move(table.find(17)));
+        table.store(33, 1, TranspositionTable.EXACT, 7, m2);
+        assertEquals(0, table.find(17));
+        assertEquals(m2, TranspositionTable.move(table.find(33)));
+        assertEquals(5, table.probes());
+        assertEquals(3, table.hits());
+    }
+
+    /** Tests that the evaluators see a walled-in side as lost. */
+    @Test
+    public void testEvaluators() {
+        Board b = new Board();
+        assertEquals(0, new MobilityEvaluator().evaluate(b));
+        assertTrue(new TerritoryEvaluator().evaluate(b) >= 0);
+        for (String sq : new String[] {
+                "a6", "a8", "b6", "b7", "b8", "c10", "c9", "d9", "e9",
+                "e10", "f10", "f9", "g9", "h9", "h10", "i6", "i7", "i8",
+                "j6", "j8" }) {
+            b.put(SPEAR, Square.sq(sq));
+        }
+        for (String name : Evaluator.NAMES) {
+            assertTrue(Evaluator.create(name).evaluate(b) > 0);
+        }
+    }
+
+    /** The territory evaluator's weights can be set as search
+     *  options. */
+    @Test
+    public void testTerritoryWeights() {
+        Board b = Benchmark.position("middlegame");
+        SearchOptions options = new SearchOptions();
+        options.set("territory.opening", "100,0,0,0");
+        options.set("territory.endgame", "0,0,100,0");
+        int[] opening = { 100, 0, 0, 0 }, endgame = { 0, 0, 100, 0 };
+        assertArrayEquals(opening, options.openingWeights());
+        assertEquals(new TerritoryEvaluator(opening, endgame).evaluate(b),
+                     Evaluator.create(options).evaluate(b));
+        for (String bad : new String[] { "1,2,3", "1,2,3,-4", "x" }) {
+            try {
+                options.set("territory.endgame", bad);
+                fail("bad weights accepted: " + bad);
+            } catch (IllegalArgumentException excp) {
+                assertArrayEquals(endgame, options.endgameWeights());
+            }
+        }
+    }
+
+    /** Tests the staging of MoveOrdering: hash move, then killers, then
+     *  history, with the queen-move part of the history shared by moves
+     *  with different arrows. */
+    @Test
+    public void testMoveOrdering() {
+        int a = Move.mv("d1-d5(d2)").code(), b = Move.mv("d1-d5(d3)").code(),
+            c = Move.mv("g1-g5(g2)").code(), d = Move.mv("j4-h4(h5)").code();
+        MoveOrdering ordering = new MoveOrdering();
+        ordering.newSearch();
+        ordering.cutoff(a, WHITE, 3, 3);
+        ordering.cutoff(c, WHITE, 1, 2);
+        assertTrue(ordering.history(b, WHITE) > 0);
+        assertEquals(0, ordering.history(a, BLACK));
+        int[] moves = { d, c, b, a };
+        ordering.order(moves, 4, d, WHITE, 1);
+        assertArrayEquals(new int[] { d, c, a, b }, moves);
+        moves = new int[] { d, c, b, a };
+        ordering.order(moves, 4, Move.NONE, WHITE, 0);
+        assertEquals(a, moves[0]);
+        assertEquals(d, moves[3]);
+    }
+
+    /** Tests that a multi-threaded Monte Carlo search returns a legal
+     *  move and respects its playout limit. */
+    @Test
+    public void testMCTSPlayer() {
+        SearchOptions options = new SearchOptions();
+        options.setMoveTime(0);
+        options.setPlayouts(300);
+        options.setThreads(2);
+        Board b = new Board();
+        b.makeMove(Move.mv("d1-d7(d1)"));
+        MCTSPlayer player = new MCTSPlayer(b.turn(), null, options);
+        Move mv = player.findMove(b);
+        assertTrue(b.isLegal(mv));
+        assertEquals(BLACK, b.get(mv.from()));
+        assertEquals(300, player.playouts());
+    }
+
+    /** Tests the tournament's Elo conversions and paired openings. */
+    @Test
+    public void testTournament() {
+        assertEquals(0.5, Tournament.expected(0), 1e-9);
+        assertEquals(100, Tournament.elo(Tournament.expected(100)), 1e-6);
+        assertArrayEquals(Tournament.opening(7), Tournament.opening(7));
+        Board b = new Board();
+        for (Move mv : Tournament.opening(3)) {
+            assertTrue(b.isLegal(mv));
+            b.makeMove(mv);
+        }
+    }
+
+        /** Tests setting search options by name. */
+    @Test
+    public void testSearchOptionsSet() {
+        SearchOptions options = new SearchOptions();
+        options.set("time", "250");
+        options.set("depth", "4");
+        options.set("ordering", "off");
+        assertEquals(250, options.moveTime());
+        assertEquals(4, options.maxDepth());
+        assertFalse(options.ordering());
+        for (String[] bad : new String[][] {
+                { "depth", "0" }, { "time", "x" }, { "eval", "none" },
+                { "colour", "red" } }) {
+            try {
+                options.set(bad[0], bad[1]);
+                fail("accepted " + bad[0] + " " + bad[1]);
+            } catch (IllegalArgumentException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    /** Solves some small regions exactly. */
+    @Test
+    public void testRegionSolver() {
+        Board b = new Board();
+        for (int k = 0; k < Board.SIZE * Board.SIZE; k += 1) {
+            b.put(SPEAR, Square.sq(k));
+        }
+        b.put(WHITE, Square.sq("a1"));
+        b.put(EMPTY, Square.sq("b1"));
+        b.put(EMPTY, Square.sq("c1"));
+        RegionSolver solver = new RegionSolver(b, b.regions().get(0));
+        assertEquals(2, solver.solve());
+        int move = solver.bestMove();
+        assertTrue(b.isLegal(move));
+        b.makeMove(move);
+        assertEquals(1, new RegionSolver(b, b.regions().get(0)).solve());
+        b.undo();
+        b.put(SPEAR, Square.sq("b1"));
+        b.put(SPEAR, Square.sq("c1"));
+        b.put(EMPTY, Square.sq("b2"));
+        solver = new RegionSolver(b, b.regions().get(0));
+        assertEquals(1, solver.solve());
+        b.put(SPEAR, Square.sq("b2"));
+        solver = new RegionSolver(b, b.regions().get(0));
+        assertEquals(0, solver.solve());
+        assertEquals(Move.NONE, solver.bestMove());
+    }
+
+    /** Builds a one-position opening book and plays from it. */
+    @Test
+    public void testOpeningBook() throws IOException {
+        Path file = Files.createTempFile("amazons", ".book");
+        try {
+            Files.delete(file);
+            SearchOptions options = new SearchOptions();
+            options.setMoveTime(0);
+            options.setMaxDepth(1);
+            PrintStream quiet =
+                new PrintStream(OutputStream.nullOutputStream());
+            OpeningBook.build(file, options, 2, 1, 1, quiet);
+            OpeningBook book = OpeningBook.open(file);
+            assertEquals(1, book.size());
+            Board b = new Board();
+            int move = book.probe(b);
+            assertTrue(b.isLegal(move));
+            options.setBook(book);
+            AI ai = new AI(WHITE, null, options);
+            assertEquals(Move.mv(move), ai.findMove(b));
+            assertEquals(0, ai.nodes());
+            b.makeMove(move);
+            assertEquals(Move.NONE, book.probe(b));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /** Checks that games written to a journal, in two sessions, are read
+     *  back unchanged, including across the Reader's mapped windows. */
+    @Test
+    public void testGameJournal() throws IOException {
+        Path file = Files.createTempFile("amazons", ".journal");
+        try {
+            Files.delete(file);
+            List<GameRecord> games = new ArrayList<>();
+            Random random = new Random(7);
+            int[] moves = new int[Board.MAX_MOVES];
+            for (int i = 0; i < 40; i += 1) {
+                Board b = new Board();
+                int length = i == 0 ? 5 : Board.SIZE * Board.SIZE;
+                while (b.winner() == EMPTY && b.numMoves() < length) {
+                    b.makeMove(moves[random.nextInt(
+                        b.generateMoves(b.turn(), moves))]);
+                }
+                games.add(new GameRecord("ab:depth=" + i, "mcts", i, b));
+            }
+            try (GameJournal.Writer w = new GameJournal.Writer(file)) {
+                for (GameRecord game : games.subList(0, 10)) {
+                    w.write(game);
+                }
+            }
+            try (GameJournal.Writer w = new GameJournal.Writer(file)) {
+                for (GameRecord game : games.subList(10, 40)) {
+                    w.write(game);
+                }
+            }
+            try (GameJournal.Reader r =
+                 new GameJournal.Reader(file,
+                                        GameJournal.MAX_RECORD_BYTES)) {
+                List<GameRecord> read = new ArrayList<>();
+                r.forEach(read::add);
+                assertEquals(games, read);
+            }
+            assertEquals(EMPTY, games.get(0).winner());
+            assertEquals(games.get(1).winner(),
+                         games.get(1).replay().winner());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /** Checks that batch analysis writes one line per position, in input
+     *  order, with a legal move and its principal variation. */
+    @Test
+    public void testAnalysis() throws IOException {
+        SearchOptions options = new SearchOptions();
+        options.setMoveTime(0);
+        options.setMaxDepth(2);
+        String input = "\na4-b5(d5)\nj7-h7(e10)\n"
+            + "a4-b5(d5) j7-h7(e10) # comment\n";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new Analysis(options, 2, 2).run(
+            new BufferedReader(new StringReader(input)),
+            new PrintStream(bytes, true));
+        String[] lines = bytes.toString().split("\\R");
+        assertEquals(4, lines.length);
+        assertTrue(lines[2].startsWith("3 error"));
+        for (int i : new int[] { 0, 1, 3 }) {
+            String[] words = lines[i].split(" ");
+            assertEquals(Integer.toString(i + 1), words[0]);
+            assertEquals("2", words[3]);
+            assertEquals("pv", words[5]);
+            assertEquals(words[1], words[6]);
+            assertEquals(8, words.length);
+            Board b = Analysis.position(input.split("\n")[i]);
+            assertTrue(b.isLegal(Move.mv(words[1])));
+        }
+    }
+
+    /** Checks that batch analysis writes a result as soon as it is done,
+     *  while the input is still open. */
+    @Test(timeout = 60000)
+    public void testAnalysisStreams() throws Exception {
+        SearchOptions options = new SearchOptions();
+        options.setMoveTime(0);
+        options.setMaxDepth(1);
+        PipedWriter writer = new PipedWriter();
+        BufferedReader input = new BufferedReader(new PipedReader(writer));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        Thread analysis = new Thread(() -> {
+            try {
+                new Analysis(options, 1, 4).run(input, out);
+            } catch (IOException excp) {
+                throw new IllegalStateException(excp);
+            }
+        });
+        analysis.start();
+        writer.write("a4-b5(d5)\n");
+        writer.flush();
+        while (!bytes.toString().startsWith("1 ")) {
+            Thread.sleep(10);
+        }
+        writer.close();
+        analysis.join();
+        assertEquals(1, bytes.toString().split("\\R").length);
+    }
+
+    /** Checks that an AI that ponders still finds legal moves when its
+     *  opponent's reply is not the one expected, and after stop(). */
+    @Test
+    public void testPondering() {
+        SearchOptions options = new SearchOptions();
+        options.setMoveTime(0);
+        options.setMaxDepth(1);
+        options.setPonder(true);
+        Controller controller =
+            new Controller(new NullView(), null, new TextReporter(),
+                           new TextPlayer(), new AI(options));
+        Player ai = new AI(options).create(WHITE, controller);
+        Board b = controller.board();
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int i = 0; i < 3; i += 1) {
+            b.makeMove(Move.mv(ai.myMove()));
+            b.generateMoves(BLACK, moves);
+            b.makeMove(moves[0]);
+        }
+        Move move = ai.findMove(b);
+        assertTrue(b.isLegal(move));
+        b.makeMove(move);
+        ai.stop();
+        b.undo();
+        assertTrue(b.isLegal(ai.findMove(b)));
+    }
+
+    /** Checks the statistics of a depth-limited search. */
+    @Test
+    public void testSearchStats() {
+        SearchOptions options = new SearchOptions();
+        options.setMoveTime(0);
+        options.setMaxDepth(2);
+        AI ai = new AI(WHITE, null, options);
+        ai.findMove(new Board());
+        SearchStats stats = ai.searchStats();
+        assertEquals(2, stats.depth());
+        assertEquals(ai.nodes(), stats.nodes());
+        assertTrue(stats.branchingFactor() > 1);
+        assertTrue(stats.cutoffRate() > 0 && stats.cutoffRate() <= 1);
+        assertTrue(stats.firstMoveCutoffRate() <= 1);
+        assertTrue(stats.generationNanos() > 0);
+        assertTrue(stats.evaluationNanos() > 0);
+        SearchStats total = new SearchStats();
+        total.add(stats);
+        total.add(stats);
+        assertEquals(2 * stats.nodes(), total.nodes());
+        assertEquals(stats.branchingFactor(), total.branchingFactor(), 1e-9);
+    }
+
+    /** Checks that the principal variation of a search is a legal line,
+     *  no longer than the search, that starts with the move chosen. */
+    @Test
+    public void testPrincipalVariation() {
+        SearchOptions options = new SearchOptions();
+        options.setMoveTime(0);
+        options.setMaxDepth(3);
+        Board b = Benchmark.position("middlegame");
+        AI ai = new AI(b.turn(), null, options);
+        Move move = ai.findMove(b);
+        int[] pv = ai.principalVariation();
+        assertTrue(pv.length >= 1 && pv.length <= 3);
+        assertEquals(move.code(), pv[0]);
+        Board line = new Board(b);
+        for (int mv : pv) {
+            assertTrue(line.isLegal(mv));
+            line.makeMove(mv);
+        }
+        assertTrue(ai.statistics().endsWith("pv " + AI.line(pv)));
+    }
+
+    /** An AI asked to move in a position where its opponent is to move
+     *  searches for the side to move, as one of that color would. */
+    @Test
+    public void testSearchOtherSide() {
+        SearchOptions options = new SearchOptions();
+        options.setMoveTime(0);
+        options.setMaxDepth(2);
+        Board b = Benchmark.position("middlegame");
+        AI mine = new AI(b.turn(), null, options),
+            other = new AI(b.turn().opponent(), null, options);
+        Move move = other.findMove(b);
+        assertEquals(b.turn(), b.get(move.from()));
+        assertEquals(mine.findMove(b), move);
+        assertEquals(mine.score(), other.score());
+    }
+
+    /** The split-ply search finds the same move and score as the
+     *  whole-move search, and a legal principal variation. */
+    @Test
+    public void testSplitPly() {
+        Board b = Benchmark.position("middlegame");
+        SearchOptions options = new SearchOptions();
+        options.setMoveTime(0);
+        options.setMaxDepth(3);
+        AI whole = new AI(b.turn(), null, options);
+        Move expected = whole.findMove(b);
+        options.set("split", "on");
+        AI split = new AI(b.turn(), null, options);
+        assertEquals(expected, split.findMove(b));
+        assertEquals(whole.score(), split.score());
+        int[] pv = split.principalVariation();
+        assertEquals(expected.code(), pv[0]);
+        Board line = new Board(b);
+        for (int mv : pv) {
+            assertTrue(line.isLegal(mv));
+            line.makeMove(mv);
+        }
+    }
+
+    /** A search with spear limits still finds a legal move, with the
+     *  limits given as an option. */
+    @Test
+    public void testArrowLimits() {
+        Board b = Benchmark.position("middlegame");
+        SearchOptions options = new SearchOptions();
+        options.setMoveTime(0);
+        options.setMaxDepth(3);
+        options.set("arrows", "2,4");
+        assertArrayEquals(new int[] { 2, 4 }, options.arrowLimits());
+        AI ai = new AI(b.turn(), null, options);
+        assertTrue(b.isLegal(ai.findMove(b)));
+        options.set("arrows", "all");
+        assertEquals(0, options.arrowLimits().length);
+        try {
+            options.set("arrows", "4,-1");
+            fail("negative spear limit accepted");
+        } catch (IllegalArgumentException excp) {
+            assertEquals(0, options.arrowLimits().length);
+        }
+    }
+
+    /** A stop that arrives before the search it is meant for has begun
+     *  still ends that search, both for a player used directly and for
+     *  a server session sent "go" and then "stop" at once, with no time
+     *  or depth limit. */
+    @Test(timeout = 60000)
+    public void testStopBeforeSearch() throws Exception {
+        Board b = Benchmark.position("middlegame");
+        SearchOptions options = new SearchOptions();
+        options.setMoveTime(0);
+        AI ai = new AI(b.turn(), null, options);
+        ai.prepareSearch();
+        ai.stop();
+        assertTrue(b.isLegal(ai.findMove(b)));
+        assertEquals(1, ai.depthReached());
+
+        Path dir = Files.createTempDirectory("amazons");
+        Path socket = dir.resolve("server");
+        startServer(new Server("unix:" + socket));
+        SocketChannel connection = connect(socket);
+        try (BufferedReader in = new BufferedReader(
+                 Channels.newReader(connection, StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(
+                 Channels.newWriter(connection, StandardCharsets.UTF_8),
+                 true)) {
+            out.println("setoption time 0");
+            for (int i = 0; i < 5; i += 1) {
+                out.println("go");
+                out.println("stop");
+                String line;
+                do {
+                    line = in.readLine();
+                    assertNotNull(line);
+                    assertFalse(line.startsWith("error"));
+                } while (!line.startsWith("bestmove"));
+            }
+            out.println("quit");
+        }
+        Files.deleteIfExists(socket);
+        Files.delete(dir);
+    }
+
+    /** A server limited to one session turns away a second client while
+     *  the first is connected, and a session's AIs search with the
+     *  table size it sets. */
+    @Test(timeout = 60000)
+    public void testServerSessions() throws Exception {
+        Path dir = Files.createTempDirectory("amazons");
+        Path socket = dir.resolve("server");
+        startServer(new Server("unix:" + socket, 1));
+        SocketChannel first = connect(socket);
+        try (BufferedReader in = new BufferedReader(
+                 Channels.newReader(first, StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(
+                 Channels.newWriter(first, StandardCharsets.UTF_8),
+                 true)) {
+            out.println("isready");
+            assertEquals("readyok", in.readLine());
+            try (SocketChannel second = connect(socket);
+                 BufferedReader refused = new BufferedReader(
+                     Channels.newReader(second, StandardCharsets.UTF_8))) {
+                assertEquals("error too many sessions", refused.readLine());
+                assertNull(refused.readLine());
+            }
+            out.println("setoption hash 1");
+            out.println("go depth 1");
+            String line;
+            do {
+                line = in.readLine();
+                assertNotNull(line);
+                assertFalse(line.startsWith("error"));
+            } while (!line.startsWith("bestmove"));
+            out.println("setoption hash 0");
+            assertTrue(in.readLine().startsWith("error"));
+            out.println("quit");
+        }
+        Files.deleteIfExists(socket);
+        Files.delete(dir);
+    }
+
+    /** Run SERVER on a daemon thread. */
+    private static void startServer(Server server) {
+        Thread thread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException excp) {
+                throw new IllegalStateException(excp);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Return a connection to the server at SOCKET, waiting for it to
+     *  start listening. */
+    private static SocketChannel connect(Path socket)
+        throws InterruptedException {
+        while (true) {
+            try {
+                return SocketChannel.open(UnixDomainSocketAddress.of(socket));
+            } catch (IOException excp) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    /** The young-brothers-wait search finds the same move and score as
+     *  the single-threaded search, with any number of threads. */
+    @Test
+    public void testYoungBrothers() {
+        Board b = Benchmark.position("middlegame");
+        SearchOptions options = new SearchOptions();
+        options.setMoveTime(0);
+        options.setMaxDepth(3);
+        AI serial = new AI(b.turn(), null, options);
+        Move expected = serial.findMove(b);
+        options.setStrategy("ybwc");
+        for (int threads = 1; threads <= 4; threads *= 2) {
+            options.setThreads(threads);
+            AI ai = new AI(b.turn(), null, options);
+            assertEquals(expected, ai.findMove(b));
+            assertEquals(serial.score(), ai.score());
+            assertEquals(expected.code(), ai.principalVariation()[0]);
+        }
+    }
+
+        /** Tests toString for initial board state and a smiling board state. :) */
     @Test
     public void testToString() {
         Board b = new Board();
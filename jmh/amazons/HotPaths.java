@@ -0,0 +1,182 @@
+package amazons;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** JMH microbenchmarks of the engine's hot paths, each run on the
+ *  opening, middlegame, and endgame positions of amazons.Benchmark
+ *  (which must be named in full here, since JMH's annotation has the
+ *  same simple name).  The benchmarks are in package amazons so that
+ *  they can reach its package-private classes.  Build and run them
+ *  with "make jmh" in the amazons directory (see the Makefile), which
+ *  writes the results as JSON for comparison across commits.
+ *  @author Joseph Park
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotPaths {
+
+    /** The name of the position benchmarked (see Benchmark.POSITIONS). */
+    @Param({ "opening", "middlegame", "endgame" })
+    public String position;
+
+    /** Depth of the fixed-depth searches. */
+    @Param({ "2" })
+    public int depth;
+
+    /** Set up the position and the moves played from it. */
+    @Setup(Level.Trial)
+    public void setUp() {
+        _board = amazons.Benchmark.position(position);
+        _moves = new int[Board.MAX_MOVES];
+        _count = _board.generateMoves(_board.turn(), _moves);
+        _eval = Evaluator.create(Evaluator.NAMES[0]);
+        _options = new SearchOptions();
+        _options.setMoveTime(0);
+        _options.setMaxDepth(depth);
+        Square[] queens = new Square[8];
+        int n = 0;
+        for (int k = 0; k < Board.SIZE * Board.SIZE; k += 1) {
+            Piece p = _board.get(Square.sq(k));
+            if (p == Piece.WHITE || p == Piece.BLACK) {
+                queens[n] = Square.sq(k);
+                n += 1;
+            }
+        }
+        _queens = Arrays.copyOf(queens, n);
+        _snapshot = _board.snapshot();
+        _scratch = new Board();
+    }
+
+    /** The player for each findMove: a fresh AI, so that no search
+     *  starts with the previous one's transposition table.  This is a
+     *  separate State so that only findMove pays for its setup. */
+    @State(Scope.Thread)
+    public static class Search {
+
+        /** Create the player for the next search of PATHS' position. */
+        @Setup(Level.Invocation)
+        public void newPlayer(HotPaths paths) {
+            _ai = new AI(paths._board.turn(), null, paths._options);
+        }
+
+        /** The player. */
+        private AI _ai;
+    }
+
+    /** Make and undo the legal moves of the position, one per call. */
+    @Benchmark
+    public void makeUndo() {
+        _board.makeMove(_moves[_next]);
+        _board.undo();
+        _next = _next + 1 == _count ? 0 : _next + 1;
+    }
+
+    /** Enumerate every legal move with the Iterator of legalMoves. */
+    @Benchmark
+    public int legalMoves() {
+        int n = 0;
+        for (Iterator<Move> i = _board.legalMoves(); i.hasNext(); ) {
+            i.next();
+            n += 1;
+        }
+        return n;
+    }
+
+    /** Store every legal move with generateMoves. */
+    @Benchmark
+    public int generateMoves() {
+        return _board.generateMoves(_board.turn(), _moves);
+    }
+
+    /** Enumerate the squares reachable from each queen. */
+    @Benchmark
+    public void reachableFrom(Blackhole sink) {
+        for (Square q : _queens) {
+            for (Iterator<Square> i = _board.reachableFrom(q, null);
+                 i.hasNext(); ) {
+                sink.consume(i.next());
+            }
+        }
+    }
+
+    /** Copy the board. */
+    @Benchmark
+    public Board copy() {
+        return new Board(_board);
+    }
+
+    /** Take an immutable snapshot of the board. */
+    @Benchmark
+    public Board.Position snapshot() {
+        return _board.snapshot();
+    }
+
+    /** Restore a board from a snapshot, as a searching thread does. */
+    @Benchmark
+    public Board restore() {
+        _scratch.copy(_snapshot);
+        return _scratch;
+    }
+
+    /** Decide whether the game is over. */
+    @Benchmark
+    public Piece winner() {
+        return _board.winner();
+    }
+
+    /** Evaluate the position statically. */
+    @Benchmark
+    public int staticScore() {
+        return AI.staticScore(_board, _eval);
+    }
+
+    /** Search the position to a fixed depth with the player in
+     *  SEARCH. */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public Move findMove(Search search) {
+        return search._ai.findMove(_board);
+    }
+
+    /** The position. */
+    private Board _board;
+    /** Its legal moves. */
+    private int[] _moves;
+    /** Number of legal moves in _moves. */
+    private int _count;
+    /** Index of the next move for makeUndo. */
+    private int _next;
+    /** A snapshot of the position. */
+    private Board.Position _snapshot;
+    /** The board restored from _snapshot. */
+    private Board _scratch;
+    /** The squares of the queens. */
+    private Square[] _queens;
+    /** The default evaluator. */
+    private Evaluator _eval;
+    /** Options for findMove. */
+    private SearchOptions _options;
+}